@@ -0,0 +1,47 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.IAccount;
+
+import java.lang.reflect.Proxy;
+import java.util.Set;
+
+/**
+ * Stubs of the JForex interfaces for the benchmarks, which cannot depend on the mocking library.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class BenchmarkSupport {
+
+    /**
+     * Create a stub returning the fixed values : an empty set, a non-empty string, true, or zero.
+     */
+    public static <T> T stub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            Class<?> r = method.getReturnType();
+            if (r == IAccount.class) {
+                return stub(IAccount.class);
+            }
+            if (r == Set.class) {
+                return Set.of();
+            }
+            if (r == String.class) {
+                return "benchmark";
+            }
+            if (r == boolean.class) {
+                return Boolean.TRUE;
+            }
+            if (r == long.class) {
+                return 0L;
+            }
+            if (r == int.class) {
+                return 0;
+            }
+            if (r == double.class) {
+                return 0.0;
+            }
+            return null;
+        }));
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.CompactTick;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+
+/**
+ * Encoding throughput of {@link TickResponse} against {@link CompactTick}.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompactEncoderBenchmark {
+
+    private final TickResponse[] ticks = new TickResponse[1024];
+
+    private CompactEncoder encoder;
+
+    private Blackhole blackhole;
+
+    private int index;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+
+        this.blackhole = blackhole;
+
+        for (int i = 0; i < ticks.length; i++) {
+            ticks[i] = TickResponse.newBuilder()
+                    .setSymbol(i % 2 == 0 ? "EURUSD" : "USDJPY")
+                    .setTime(1590969600000L + i * 100)
+                    .setAskPrice(i % 2 == 0 ? 1.11235 + (i % 7) * 0.00001 : 107.655 + (i % 7) * 0.001)
+                    .setAskSize(1.0 + (i % 3) * 0.25)
+                    .setBidPrice(i % 2 == 0 ? 1.11225 + (i % 7) * 0.00001 : 107.645 + (i % 7) * 0.001)
+                    .setBidSize(1.0 + (i % 5) * 0.25)
+                    .build();
+        }
+
+        encoder = new CompactEncoder(new StreamObserver<>() {
+            @Override
+            public void onNext(CompactTick value) {
+                CompactEncoderBenchmark.this.blackhole.consume(value.toByteArray());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        }, 2);
+
+    }
+
+    private TickResponse next() {
+        return ticks[index++ & (ticks.length - 1)];
+    }
+
+    @Benchmark
+    public byte[] plain() {
+        return next().toByteArray();
+    }
+
+    @Benchmark
+    public void compact() {
+        encoder.onNext(next());
+    }
+
+}
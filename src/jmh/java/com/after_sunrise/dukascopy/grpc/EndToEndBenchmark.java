@@ -0,0 +1,135 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.after_sunrise.dukascopy.grpc.proto.DukascopyEndpointGrpc;
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.Instrument;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_SUBSCRIPTION_DELAY;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+
+/**
+ * Per-tick cost from {@link Service#onTick(Instrument, long, double, double, double, double)} to the client stubs,
+ * through an in-process gRPC server. Both ends run on the direct executor, so a tick is received by all the clients
+ * before the operation returns.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int subscribers;
+
+    private ScheduledExecutorService executor;
+
+    private Service service;
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    private long sequence;
+
+    @Setup
+    public void setUp(Blackhole blackhole) throws IOException {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_SUBSCRIPTION_DELAY, "0");
+
+        executor = Executors.newSingleThreadScheduledExecutor();
+
+        service = new Service(Clock.systemUTC(), properties, executor, BenchmarkSupport.stub(IContext.class));
+
+        String name = getClass().getSimpleName() + "-" + subscribers;
+
+        server = InProcessServerBuilder.forName(name)
+                .directExecutor()
+                .addService(service.createServiceDefinition())
+                .build().start();
+
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+
+        TickRequest request = TickRequest.newBuilder().addSymbols(Instrument.EURUSD.name()).build();
+
+        for (int i = 0; i < subscribers; i++) {
+
+            DukascopyEndpointGrpc.newStub(channel).subscribe(request, new StreamObserver<>() {
+                @Override
+                public void onNext(TickResponse value) {
+                    blackhole.consume(value);
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    blackhole.consume(t);
+                }
+
+                @Override
+                public void onCompleted() {
+                    blackhole.consume(this);
+                }
+            });
+
+        }
+
+        while (service.getSubscribers(Instrument.EURUSD).size() < subscribers) {
+            Thread.onSpinWait(); // Wait for the registrations.
+        }
+
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+
+        channel.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+
+        server.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+
+        service.onShutdown();
+
+        executor.shutdown();
+
+    }
+
+    @Benchmark
+    public void onTick() {
+
+        long s = ++sequence;
+
+        service.onTick(Instrument.EURUSD, s, 1.11235 + (s % 10) * 0.00001, 1.25, 1.11225 + (s % 10) * 0.00001, 2.5);
+
+    }
+
+}
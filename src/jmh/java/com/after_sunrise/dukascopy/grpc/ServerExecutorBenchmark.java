@@ -0,0 +1,106 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.after_sunrise.dukascopy.grpc.proto.DukascopyEndpointGrpc;
+import com.after_sunrise.dukascopy.grpc.proto.DukascopyEndpointGrpc.DukascopyEndpointBlockingStub;
+import com.dukascopy.api.IContext;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.StatusRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.StatusResponse;
+
+/**
+ * Latency of the unary {@code status} call under concurrent load, per {@link ServerExecutor} strategy.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(16)
+@Fork(1)
+public class ServerExecutorBenchmark {
+
+    @Param({"SHARED", "POOL", "DIRECT", "VIRTUAL"})
+    private ServerExecutor type;
+
+    private ScheduledExecutorService shared;
+
+    private Executor executor;
+
+    private Server server;
+
+    private ManagedChannel channel;
+
+    private DukascopyEndpointBlockingStub stub;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        shared = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors());
+
+        executor = type.create(shared, Executors.defaultThreadFactory(), Runtime.getRuntime().availableProcessors());
+
+        Service service = new Service(Clock.systemUTC(), new Properties(), shared, BenchmarkSupport.stub(IContext.class));
+
+        String name = getClass().getSimpleName() + "-" + type;
+
+        server = InProcessServerBuilder.forName(name)
+                .executor(executor)
+                .addService(service.createServiceDefinition())
+                .build().start();
+
+        channel = InProcessChannelBuilder.forName(name).directExecutor().build();
+
+        stub = DukascopyEndpointGrpc.newBlockingStub(channel);
+
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+
+        channel.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+
+        server.shutdownNow().awaitTermination(1, TimeUnit.SECONDS);
+
+        if (executor instanceof ExecutorService && executor != shared) {
+            ((ExecutorService) executor).shutdown();
+        }
+
+        shared.shutdown();
+
+    }
+
+    @Benchmark
+    public StatusResponse status() {
+        return stub.status(StatusRequest.getDefaultInstance());
+    }
+
+}
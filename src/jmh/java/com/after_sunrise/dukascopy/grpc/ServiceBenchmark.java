@@ -0,0 +1,206 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.Instrument;
+import io.grpc.stub.StreamObserver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_SUBSCRIPTION_DELAY;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+
+/**
+ * Per-tick cost of {@link Service#onTick(Instrument, long, double, double, double, double)}, fanning out to the
+ * in-memory stream observers. Run with {@code -prof gc} for the allocation rate.
+ *
+ * {@link #onTick_Shared(Shared, Worker)} dispatches a distinct instrument per thread to the streams shared by all the
+ * threads, as the dispatcher shards do, so that the monitor of each stream is contended. Compare it with
+ * {@link #onTick()} run with the same {@code -t}, where every thread owns its streams.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServiceBenchmark {
+
+    private static final int SHARED_INSTRUMENTS = 4;
+
+    @Param({"1", "10", "100", "1000"})
+    private int subscribers;
+
+    @Param({"1", "4"})
+    private int instruments;
+
+    private ScheduledExecutorService executor;
+
+    private Service service;
+
+    private Instrument[] symbols;
+
+    private long sequence;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_SUBSCRIPTION_DELAY, "0");
+
+        executor = Executors.newSingleThreadScheduledExecutor();
+
+        service = new Service(Clock.systemUTC(), properties, executor, BenchmarkSupport.stub(IContext.class));
+
+        symbols = Arrays.copyOf(Instrument.values(), instruments);
+
+        TickRequest.Builder request = TickRequest.newBuilder();
+
+        Arrays.stream(symbols).map(Instrument::name).forEach(request::addSymbols);
+
+        for (int i = 0; i < subscribers; i++) {
+
+            service.subscribe(request.build(), new BlackholeObserver(blackhole));
+
+        }
+
+    }
+
+    @TearDown
+    public void tearDown() {
+
+        service.onShutdown();
+
+        executor.shutdown();
+
+    }
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+
+        @Param({"1", "10", "100", "1000"})
+        private int subscribers;
+
+        private final AtomicInteger workers = new AtomicInteger();
+
+        private ScheduledExecutorService executor;
+
+        private Service service;
+
+        private Instrument[] symbols;
+
+        @Setup
+        public void setUp(Blackhole blackhole) {
+
+            Properties properties = new Properties();
+            properties.setProperty(CK_SUBSCRIPTION_DELAY, "0");
+
+            executor = Executors.newSingleThreadScheduledExecutor();
+
+            service = new Service(Clock.systemUTC(), properties, executor, BenchmarkSupport.stub(IContext.class));
+
+            symbols = Arrays.copyOf(Instrument.values(), SHARED_INSTRUMENTS);
+
+            TickRequest.Builder request = TickRequest.newBuilder();
+
+            Arrays.stream(symbols).map(Instrument::name).forEach(request::addSymbols);
+
+            for (int i = 0; i < subscribers; i++) {
+                service.subscribe(request.build(), new BlackholeObserver(blackhole));
+            }
+
+        }
+
+        @TearDown
+        public void tearDown() {
+
+            service.onShutdown();
+
+            executor.shutdown();
+
+        }
+
+    }
+
+    @State(Scope.Thread)
+    public static class Worker {
+
+        private Instrument instrument;
+
+        private long sequence;
+
+        @Setup
+        public void setUp(Shared shared) {
+            instrument = shared.symbols[shared.workers.getAndIncrement() % shared.symbols.length];
+        }
+
+    }
+
+    private static class BlackholeObserver implements StreamObserver<TickResponse> {
+
+        private final Blackhole blackhole;
+
+        private BlackholeObserver(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void onNext(TickResponse value) {
+            blackhole.consume(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            blackhole.consume(t);
+        }
+
+        @Override
+        public void onCompleted() {
+            blackhole.consume(this);
+        }
+
+    }
+
+    @Benchmark
+    public void onTick() {
+
+        long s = ++sequence;
+
+        Instrument instrument = symbols[(int) (s % symbols.length)];
+
+        service.onTick(instrument, s, 1.11235 + (s % 10) * 0.00001, 1.25, 1.11225 + (s % 10) * 0.00001, 2.5);
+
+    }
+
+    @Benchmark
+    public void onTick_Shared(Shared shared, Worker worker) {
+
+        long s = ++worker.sequence;
+
+        shared.service.onTick(worker.instrument, s, 1.11235 + (s % 10) * 0.00001, 1.25, 1.11225 + (s % 10) * 0.00001, 2.5);
+
+    }
+
+}
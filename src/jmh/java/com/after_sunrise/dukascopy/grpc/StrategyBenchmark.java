@@ -0,0 +1,123 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_CONNECTION_PATH;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_DISPATCH_CAPACITY;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_JOURNAL_PATH;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_SESSIONS;
+
+/**
+ * Per-tick cost of the ingestion in {@link Strategy#onTick(Instrument, ITick)}, dispatched synchronously without the
+ * subscribers, so that the journal is written on the calling thread.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StrategyBenchmark {
+
+    @Param({"false", "true"})
+    private boolean journal;
+
+    private ScheduledExecutorService executor;
+
+    private Path directory;
+
+    private Journal target;
+
+    private Transport transport;
+
+    private Endpoint endpoint;
+
+    private Strategy strategy;
+
+    private ITick tick;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_CONNECTION_PATH, "localhost:0");
+        properties.setProperty(CK_DISPATCH_CAPACITY, "0");
+
+        if (journal) {
+            directory = Files.createTempDirectory(getClass().getSimpleName());
+            properties.setProperty(CK_JOURNAL_PATH, directory.toString());
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor();
+
+        target = new Journal(Clock.systemUTC(), properties);
+
+        transport = new Transport(properties);
+
+        Router router = new Router(properties);
+
+        endpoint = new Endpoint(Clock.systemUTC(), properties, executor, Executors.defaultThreadFactory(), transport, router);
+
+        strategy = new Strategy(CV_SESSIONS, properties, executor, Executors.defaultThreadFactory(), target, endpoint, router);
+
+        strategy.onStart(BenchmarkSupport.stub(IContext.class));
+
+        tick = BenchmarkSupport.stub(ITick.class);
+
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+
+        strategy.onStop();
+
+        endpoint.close();
+
+        target.close();
+
+        transport.close();
+
+        executor.shutdown();
+
+        if (directory != null) {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(java.io.File::delete);
+            }
+        }
+
+    }
+
+    @Benchmark
+    public void onTick() {
+        strategy.onTick(Instrument.EURUSD, tick);
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import io.grpc.Drainable;
+import io.grpc.MethodDescriptor.Marshaller;
+import io.grpc.protobuf.ProtoUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+
+/**
+ * Per-tick cost of marshalling one {@link TickResponse} for every subscriber of the instrument.
+ *
+ * The marshallers are shared across the benchmark threads, as the dispatcher shards share the one installed on the
+ * server, and the threaded variants marshal different messages concurrently.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TickMarshallerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Marshallers {
+
+        private final Marshaller<TickResponse> protobuf = ProtoUtils.marshaller(TickResponse.getDefaultInstance());
+
+        private final Marshaller<TickResponse> shared = new TickMarshaller();
+
+    }
+
+    @Param({"1", "10", "100", "1000"})
+    private int subscribers;
+
+    private OutputStream sink;
+
+    private long sequence;
+
+    @Setup
+    public void setUp() {
+        sink = OutputStream.nullOutputStream();
+    }
+
+    private TickResponse next() {
+
+        long s = ++sequence;
+
+        return TickResponse.newBuilder()
+                .setSymbol("EURUSD")
+                .setTime(1590969600000L + s)
+                .setAskPrice(1.11235 + (s % 10) * 0.00001)
+                .setAskSize(1.25)
+                .setBidPrice(1.11225 + (s % 10) * 0.00001)
+                .setBidSize(2.5)
+                .build();
+
+    }
+
+    private int fanout(Marshaller<TickResponse> marshaller) throws IOException {
+
+        TickResponse response = next();
+
+        int bytes = 0;
+
+        for (int i = 0; i < subscribers; i++) {
+
+            InputStream stream = marshaller.stream(response);
+
+            bytes += ((Drainable) stream).drainTo(sink);
+
+        }
+
+        return bytes;
+
+    }
+
+    @Benchmark
+    public int protobuf(Marshallers m) throws IOException {
+        return fanout(m.protobuf);
+    }
+
+    @Benchmark
+    public int shared(Marshallers m) throws IOException {
+        return fanout(m.shared);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int protobuf_Threads(Marshallers m) throws IOException {
+        return fanout(m.protobuf);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int shared_Threads(Marshallers m) throws IOException {
+        return fanout(m.shared);
+    }
+
+}
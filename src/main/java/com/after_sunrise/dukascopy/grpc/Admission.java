@@ -0,0 +1,454 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.after_sunrise.dukascopy.grpc.proto.DukascopyEndpointGrpc;
+import io.grpc.ForwardingServerCall.SimpleForwardingServerCall;
+import io.grpc.ForwardingServerCallListener.SimpleForwardingServerCallListener;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Clock;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_ADMISSION_STATUS_BURST;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_ADMISSION_STATUS_RATE;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_ADMISSION_STREAMS;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_ADMISSION_SYMBOLS;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_ADMISSION_STATUS_BURST;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_ADMISSION_STATUS_RATE;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_ADMISSION_STREAMS;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_ADMISSION_SYMBOLS;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.BarRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.DepthRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.ManageRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.ReplayRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickRequest;
+
+/**
+ * Admission control in front of the {@link Service}, which rejects the calls beyond the per-peer limits with
+ * {@code RESOURCE_EXHAUSTED}, before they reach the service.
+ *
+ * Peers are identified by the remote address without the port, so that the limits are shared across the connections
+ * of a client host. Peers are forgotten once they have no streams and a full bucket.
+ *
+ * Clients without an IP address, such as the ones over the Unix domain sockets or in-process, are exempt from the
+ * per-peer limits, since they cannot be told apart from each other and would otherwise share a single server-wide
+ * limit. They are local to the host, and the access is expected to be controlled by the socket file permissions.
+ * The per-stream symbol limit still applies to them.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Admission implements ServerInterceptor {
+
+    private static final Counter REJECTED = Counter.build()
+            .name("dukas_grpc_admission_rejected_total")
+            .help("Number of calls rejected by the admission control.")
+            .labelNames("reason")
+            .register();
+
+    private static final Gauge LIMITS = Gauge.build()
+            .name("dukas_grpc_admission_limit")
+            .help("Configured limits of the admission control. Non-positive if disabled.")
+            .labelNames("limit")
+            .register();
+
+    private static final Gauge STREAMS = Gauge.build()
+            .name("dukas_grpc_admission_streams")
+            .help("Number of streams admitted and active.")
+            .register();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>(); // Peers are mutated only within the compute.
+
+    private final Clock clock;
+
+    private final int maxStreams;
+
+    private final int maxSymbols;
+
+    private final double statusRate;
+
+    private final int statusBurst;
+
+    public Admission(Clock clock, Properties properties) {
+
+        this.clock = Objects.requireNonNull(clock, "Clock is required.");
+
+        this.maxStreams = Integer.parseInt(properties.getProperty(CK_ADMISSION_STREAMS, String.valueOf(CV_ADMISSION_STREAMS)));
+
+        this.maxSymbols = Integer.parseInt(properties.getProperty(CK_ADMISSION_SYMBOLS, String.valueOf(CV_ADMISSION_SYMBOLS)));
+
+        this.statusRate = Double.parseDouble(properties.getProperty(CK_ADMISSION_STATUS_RATE, String.valueOf(CV_ADMISSION_STATUS_RATE)));
+
+        this.statusBurst = Integer.parseInt(properties.getProperty(CK_ADMISSION_STATUS_BURST, String.valueOf(CV_ADMISSION_STATUS_BURST)));
+
+        LIMITS.labels("streams").set(maxStreams);
+        LIMITS.labels("symbols").set(maxSymbols);
+        LIMITS.labels("status_rate").set(statusRate);
+        LIMITS.labels("status_burst").set(statusBurst);
+
+        logger.info("Admission : streams={}, symbols={}, status={}/s (burst={})", maxStreams, maxSymbols, statusRate, statusBurst);
+
+    }
+
+    @Override
+    public <Q, R> ServerCall.Listener<Q> interceptCall(ServerCall<Q, R> call, Metadata headers, ServerCallHandler<Q, R> next) {
+
+        MethodDescriptor<Q, R> method = call.getMethodDescriptor();
+
+        String peer = toPeer(call.getAttributes().get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR));
+
+        if (DukascopyEndpointGrpc.getStatusMethod().getFullMethodName().equals(method.getFullMethodName())) {
+
+            if (peer != null && !acquire(peer)) {
+                return reject(call, "status", "Too many status requests : " + peer);
+            }
+
+            return next.startCall(call, headers);
+
+        }
+
+        if (method.getType().serverSendsOneMessage()) {
+            return next.startCall(call, headers);
+        }
+
+        if (peer != null && !open(peer)) {
+            return reject(call, "streams", "Too many streams : " + peer);
+        }
+
+        try {
+
+            ServerCall<Q, R> c = method.getType().clientSendsOneMessage() ? call : new Guarded<>(call);
+
+            return new Stream<>(next.startCall(c, headers), c, peer);
+
+        } catch (RuntimeException e) {
+
+            if (peer != null) {
+                close(peer);
+            }
+
+            throw e;
+
+        }
+
+    }
+
+    /**
+     * @return Host address of the peer, or null if the peer has no IP address and is exempt from the per-peer limits.
+     */
+    private static String toPeer(SocketAddress address) {
+
+        if (address instanceof InetSocketAddress && ((InetSocketAddress) address).getAddress() != null) {
+            return ((InetSocketAddress) address).getAddress().getHostAddress();
+        }
+
+        return null;
+
+    }
+
+    private <Q, R> ServerCall.Listener<Q> reject(ServerCall<Q, R> call, String reason, String message) {
+
+        REJECTED.labels(reason).inc();
+
+        logger.debug("Rejecting call : {} - {}", call.getMethodDescriptor().getFullMethodName(), message);
+
+        call.close(Status.RESOURCE_EXHAUSTED.withDescription(message), new Metadata());
+
+        return new ServerCall.Listener<>() {
+        };
+
+    }
+
+    private boolean open(String peer) {
+
+        sweep(peer);
+
+        AtomicBoolean admitted = new AtomicBoolean();
+
+        peers.compute(peer, (k, v) -> {
+
+            Peer p = v != null ? v : new Peer(clock.millis());
+
+            if (maxStreams <= 0 || p.streams < maxStreams) {
+
+                p.streams++;
+
+                admitted.set(true);
+
+            }
+
+            return p;
+
+        });
+
+        if (admitted.get()) {
+            STREAMS.inc();
+        }
+
+        return admitted.get();
+
+    }
+
+    private void close(String peer) {
+
+        long now = clock.millis();
+
+        peers.computeIfPresent(peer, (k, p) -> --p.streams <= 0 && p.isIdle(now) ? null : p);
+
+        STREAMS.dec();
+
+    }
+
+    private boolean acquire(String peer) {
+
+        if (statusRate <= 0) {
+            return true;
+        }
+
+        sweep(peer);
+
+        long now = clock.millis();
+
+        AtomicBoolean admitted = new AtomicBoolean();
+
+        peers.compute(peer, (k, v) -> {
+
+            Peer p = v != null ? v : new Peer(now);
+
+            if (p.refill(now) >= 1) {
+
+                p.tokens--;
+
+                admitted.set(true);
+
+            }
+
+            return p;
+
+        });
+
+        return admitted.get();
+
+    }
+
+    /**
+     * Forget the idle peers, only when a new peer arrives, so that the scan is not on the path of the known peers.
+     */
+    private void sweep(String peer) {
+
+        if (peers.containsKey(peer)) {
+            return;
+        }
+
+        long now = clock.millis();
+
+        for (String key : peers.keySet()) {
+            peers.computeIfPresent(key, (k, p) -> p.streams <= 0 && p.isIdle(now) ? null : p);
+        }
+
+    }
+
+    private class Peer {
+
+        private int streams;
+
+        private double tokens;
+
+        private long refilled;
+
+        private Peer(long now) {
+            this.tokens = statusBurst;
+            this.refilled = now;
+        }
+
+        private double refill(long now) {
+
+            tokens = Math.min(statusBurst, tokens + Math.max(now - refilled, 0) * statusRate / 1000);
+
+            refilled = now;
+
+            return tokens;
+
+        }
+
+        private boolean isIdle(long now) {
+            return statusRate <= 0 || refill(now) >= statusBurst;
+        }
+
+    }
+
+    /**
+     * Serializes the outbound operations of the bidirectional calls, since a rejection may close the call while the
+     * service is sending on the dispatcher threads.
+     */
+    private static class Guarded<Q, R> extends SimpleForwardingServerCall<Q, R> {
+
+        private Guarded(ServerCall<Q, R> delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public synchronized void sendHeaders(Metadata headers) {
+            super.sendHeaders(headers);
+        }
+
+        @Override
+        public synchronized void sendMessage(R message) {
+            super.sendMessage(message); // Fails once closed, which unregisters the listener.
+        }
+
+        @Override
+        public synchronized void close(Status status, Metadata trailers) {
+            super.close(status, trailers);
+        }
+
+    }
+
+    /**
+     * Counts the stream against the peer until the call terminates, and rejects the requests beyond the symbol limit.
+     */
+    private class Stream<Q, R> extends SimpleForwardingServerCallListener<Q> {
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private final Set<String> symbols = new HashSet<>(); // Accessed serially by the call.
+
+        private final ServerCall<Q, R> call;
+
+        private final String peer;
+
+        private volatile boolean rejected;
+
+        private Stream(ServerCall.Listener<Q> delegate, ServerCall<Q, R> call, String peer) {
+            super(delegate);
+            this.call = call;
+            this.peer = peer;
+        }
+
+        private int count(Q message) {
+
+            if (message instanceof TickRequest) {
+                return ((TickRequest) message).getSymbolsCount();
+            }
+
+            if (message instanceof DepthRequest) {
+                return ((DepthRequest) message).getSymbolsCount();
+            }
+
+            if (message instanceof BarRequest) {
+                return ((BarRequest) message).getSymbolsCount();
+            }
+
+            if (message instanceof ReplayRequest) {
+                return ((ReplayRequest) message).getSymbolsCount();
+            }
+
+            if (message instanceof ManageRequest) {
+
+                symbols.addAll(((ManageRequest) message).getAddList());
+
+                symbols.removeAll(((ManageRequest) message).getRemoveList()); // Removals take precedence.
+
+                return symbols.size();
+
+            }
+
+            return 0;
+
+        }
+
+        @Override
+        public void onMessage(Q message) {
+
+            if (rejected) {
+                return;
+            }
+
+            int count = count(message);
+
+            if (maxSymbols > 0 && count > maxSymbols) {
+
+                rejected = true;
+
+                reject(call, "symbols", "Too many symbols : " + count + " (" + (peer == null ? "local" : peer) + ")");
+
+                super.onCancel(); // Release the stream from the service.
+
+                return;
+
+            }
+
+            super.onMessage(message);
+
+        }
+
+        @Override
+        public void onHalfClose() {
+
+            if (!rejected) {
+                super.onHalfClose();
+            }
+
+        }
+
+        @Override
+        public void onReady() {
+
+            if (!rejected) {
+                super.onReady();
+            }
+
+        }
+
+        @Override
+        public void onCancel() {
+
+            release();
+
+            if (!rejected) {
+                super.onCancel();
+            }
+
+        }
+
+        @Override
+        public void onComplete() {
+
+            release();
+
+            if (!rejected) {
+                super.onComplete();
+            }
+
+        }
+
+        private void release() {
+
+            if (closed.compareAndSet(false, true) && peer != null) {
+                close(peer);
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,172 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.Instrument;
+import io.grpc.stub.StreamObserver;
+
+import java.util.List;
+import java.util.Objects;
+
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.BarResponse;
+
+/**
+ * Aggregates the ticks of an instrument into the OHLC bars of a fixed interval, using primitive accumulators.
+ *
+ * Bars are aligned to the epoch, and are completed either by a tick of the later bar, or by the timer once the grace
+ * period has elapsed after the bar, so that the ticks delayed in transit are still aggregated. Ticks which arrive
+ * after their bar has been completed are not aggregated, and are counted as late.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Aggregator {
+
+    private final Instrument instrument;
+
+    private final long interval;
+
+    private final long grace;
+
+    private volatile List<StreamObserver<BarResponse>> observers = List.of(); // Copy-on-write
+
+    private long start = Long.MIN_VALUE;
+
+    private long sealed = Long.MIN_VALUE;
+
+    private long count;
+
+    private double askOpen;
+
+    private double askHigh;
+
+    private double askLow;
+
+    private double askClose;
+
+    private double askVolume;
+
+    private double bidOpen;
+
+    private double bidHigh;
+
+    private double bidLow;
+
+    private double bidClose;
+
+    private double bidVolume;
+
+    public Aggregator(Instrument instrument, long interval, long grace) {
+        this.instrument = Objects.requireNonNull(instrument, "Instrument is required.");
+        this.interval = interval;
+        this.grace = Math.max(grace, 0);
+    }
+
+    public Instrument getInstrument() {
+        return instrument;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    public List<StreamObserver<BarResponse>> getObservers() {
+        return observers;
+    }
+
+    public void setObservers(List<StreamObserver<BarResponse>> observers) {
+        this.observers = List.copyOf(observers);
+    }
+
+    /**
+     * Accumulate the tick into the current bar.
+     *
+     * @return Completed bar, if the tick belongs to a later bar. Null otherwise.
+     */
+    public synchronized BarResponse onTick(long time, double askPrice, double askSize, double bidPrice, double bidSize) {
+
+        long bucket = time - Math.floorMod(time, interval);
+
+        if (bucket < sealed) {
+
+            Metrics.of(instrument).onLate(interval);
+
+            return null; // Late tick.
+
+        }
+
+        BarResponse completed = null;
+
+        if (bucket != start) {
+
+            completed = seal(bucket);
+
+            start = bucket;
+            count = 0;
+            askOpen = askHigh = askLow = askPrice;
+            askVolume = 0;
+            bidOpen = bidHigh = bidLow = bidPrice;
+            bidVolume = 0;
+
+        }
+
+        count++;
+        askHigh = Math.max(askHigh, askPrice);
+        askLow = Math.min(askLow, askPrice);
+        askClose = askPrice;
+        askVolume += askSize;
+        bidHigh = Math.max(bidHigh, bidPrice);
+        bidLow = Math.min(bidLow, bidPrice);
+        bidClose = bidPrice;
+        bidVolume += bidSize;
+
+        return completed;
+
+    }
+
+    /**
+     * Complete the current bar, if its interval and the grace period have elapsed.
+     *
+     * @param now Current time.
+     * @return Completed bar. Null if none.
+     */
+    public synchronized BarResponse onTimer(long now) {
+
+        if (start == Long.MIN_VALUE || now < start + interval + grace) {
+            return null;
+        }
+
+        BarResponse completed = seal(start + interval);
+
+        start = Long.MIN_VALUE;
+
+        return completed;
+
+    }
+
+    private BarResponse seal(long next) {
+
+        sealed = Math.max(sealed, next);
+
+        if (start == Long.MIN_VALUE) {
+            return null;
+        }
+
+        return BarResponse.newBuilder()
+                .setSymbol(instrument.name())
+                .setIntervalMillis(interval)
+                .setTime(start)
+                .setCount(count)
+                .setAskOpen(askOpen)
+                .setAskHigh(askHigh)
+                .setAskLow(askLow)
+                .setAskClose(askClose)
+                .setAskVolume(askVolume)
+                .setBidOpen(bidOpen)
+                .setBidHigh(bidHigh)
+                .setBidLow(bidLow)
+                .setBidClose(bidClose)
+                .setBidVolume(bidVolume)
+                .build();
+
+    }
+
+}
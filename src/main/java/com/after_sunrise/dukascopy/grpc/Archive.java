@@ -0,0 +1,337 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.Instrument;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_ARCHIVE_PATH;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_ARCHIVE_SIZE;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_ARCHIVE_PATH;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_ARCHIVE_SIZE;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * On-disk cache of the historical ticks downloaded from JForex, stored in a columnar file per instrument and hour.
+ *
+ * Files are named {@code <symbol>/<epoch hour>.ticks}, and are evicted in the least-recently-used order when the
+ * total size exceeds the limit. All values are little-endian.
+ * <pre>
+ * Header  (16 bytes) : magic(int) | version(int) | tick count(long)
+ * Columns (n * 40)   : time(long * n) | ask price(double * n) | ask size(double * n) | bid price(double * n)
+ *                      | bid size(double * n)
+ * </pre>
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Archive {
+
+    static final int MAGIC = 0x4155_4b44; // "DKUA"
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 16;
+
+    static final long HOUR_MILLIS = 60 * 60 * 1000;
+
+    static final String SUFFIX = ".ticks";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Map<Path, Long> files = new LinkedHashMap<>(16, 0.75f, true); // Guarded by this, access-ordered.
+
+    private final Clock clock;
+
+    private final Path directory;
+
+    private final long limit;
+
+    private long total; // Guarded by this.
+
+    public Archive(Clock clock, Properties properties) {
+
+        this.clock = Objects.requireNonNull(clock, "Clock is required.");
+
+        String path = properties.getProperty(CK_ARCHIVE_PATH, CV_ARCHIVE_PATH);
+
+        this.directory = StringUtils.isBlank(path) ? null : Paths.get(path).toAbsolutePath();
+
+        this.limit = Long.parseLong(properties.getProperty(CK_ARCHIVE_SIZE, String.valueOf(CV_ARCHIVE_SIZE)));
+
+        if (directory != null && Files.isDirectory(directory)) {
+
+            try (Stream<Path> paths = Files.walk(directory, 2)) {
+
+                List<Path> existing = paths.filter(p -> p.toString().endsWith(SUFFIX))
+                        .sorted(Comparator.comparing(Archive::modified)).collect(Collectors.toList());
+
+                for (Path p : existing) {
+                    add(p, Files.size(p));
+                }
+
+            } catch (IOException e) {
+
+                logger.warn("Failed to scan archive : {}", directory, e);
+
+            }
+
+        }
+
+        logger.info("Archive : {} ({} files, {}/{} bytes)", directory == null ? "disabled" : directory, files.size(), total, limit);
+
+    }
+
+    private static FileTime modified(Path path) {
+
+        try {
+
+            return Files.getLastModifiedTime(path);
+
+        } catch (IOException e) {
+
+            return FileTime.fromMillis(0);
+
+        }
+
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * @return Start time of the hour which contains the time.
+     */
+    public static long toHour(long time) {
+        return Math.floorDiv(time, HOUR_MILLIS) * HOUR_MILLIS;
+    }
+
+    Path resolve(Instrument instrument, long hour) {
+        return directory.resolve(instrument.name()).resolve(toHour(hour) / HOUR_MILLIS + SUFFIX);
+    }
+
+    /**
+     * Read the cached ticks of the hour.
+     *
+     * @return Ticks ordered by time. Null if not cached.
+     */
+    public List<TickResponse> read(Instrument instrument, long hour) throws IOException {
+
+        if (directory == null) {
+            return null;
+        }
+
+        Path path = resolve(instrument, hour);
+
+        synchronized (this) {
+
+            if (files.get(path) == null) {
+                return null; // Also marks the entry as recently used.
+            }
+
+        }
+
+        ByteBuffer buffer;
+
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+
+            buffer = ByteBuffer.allocate((int) channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+
+            while (buffer.hasRemaining()) {
+
+                if (channel.read(buffer) < 0) {
+                    break; // Truncated
+                }
+
+            }
+
+            buffer.flip();
+
+        } catch (NoSuchFileException e) {
+
+            remove(path);
+
+            return null; // Deleted externally.
+
+        }
+
+        long count = buffer.remaining() < HEADER_SIZE ? -1 : buffer.getLong(8);
+
+        if (count < 0 || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                || buffer.remaining() < HEADER_SIZE + count * Long.BYTES * 5) {
+
+            logger.warn("Discarding invalid archive : {}", path);
+
+            remove(path);
+
+            Files.deleteIfExists(path);
+
+            return null;
+
+        }
+
+        List<TickResponse> ticks = new ArrayList<>((int) count);
+
+        String symbol = instrument.name();
+
+        int stride = (int) count * Long.BYTES;
+
+        for (int i = 0; i < count; i++) {
+
+            int offset = HEADER_SIZE + i * Long.BYTES;
+
+            ticks.add(TickResponse.newBuilder()
+                    .setSymbol(symbol)
+                    .setTime(buffer.getLong(offset))
+                    .setAskPrice(buffer.getDouble(offset + stride))
+                    .setAskSize(buffer.getDouble(offset + stride * 2))
+                    .setBidPrice(buffer.getDouble(offset + stride * 3))
+                    .setBidSize(buffer.getDouble(offset + stride * 4))
+                    .build());
+
+        }
+
+        try {
+
+            Files.setLastModifiedTime(path, FileTime.fromMillis(clock.millis())); // Retain recency on restart.
+
+        } catch (NoSuchFileException e) {
+
+            remove(path); // Evicted concurrently, after the read.
+
+        }
+
+        return ticks;
+
+    }
+
+    /**
+     * Cache the ticks of the completed hour, and evict the least-recently-used hours beyond the size limit.
+     */
+    public void write(Instrument instrument, long hour, List<TickResponse> ticks) throws IOException {
+
+        if (directory == null) {
+            return;
+        }
+
+        Path path = resolve(instrument, hour);
+
+        int count = ticks.size();
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + count * Long.BYTES * 5).order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(count);
+
+        ticks.forEach(t -> buffer.putLong(t.getTime()));
+        ticks.forEach(t -> buffer.putDouble(t.getAskPrice()));
+        ticks.forEach(t -> buffer.putDouble(t.getAskSize()));
+        ticks.forEach(t -> buffer.putDouble(t.getBidPrice()));
+        ticks.forEach(t -> buffer.putDouble(t.getBidSize()));
+
+        buffer.flip();
+
+        Files.createDirectories(path.getParent());
+
+        Path temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+
+        try {
+
+            try (FileChannel channel = FileChannel.open(temp, WRITE)) {
+
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+
+            }
+
+            Files.move(temp, path, ATOMIC_MOVE, REPLACE_EXISTING);
+
+        } finally {
+
+            Files.deleteIfExists(temp);
+
+        }
+
+        List<Path> evicted = new ArrayList<>();
+
+        synchronized (this) {
+
+            add(path, Files.size(path));
+
+            Iterator<Map.Entry<Path, Long>> itr = files.entrySet().iterator();
+
+            while (total > limit && itr.hasNext()) {
+
+                Map.Entry<Path, Long> entry = itr.next();
+
+                if (entry.getKey().equals(path)) {
+                    continue; // Keep the latest, even if it exceeds the limit alone.
+                }
+
+                total -= entry.getValue();
+
+                evicted.add(entry.getKey());
+
+                itr.remove();
+
+            }
+
+        }
+
+        for (Path p : evicted) {
+
+            logger.debug("Evicting archive : {}", p);
+
+            Files.deleteIfExists(p);
+
+        }
+
+    }
+
+    private synchronized void add(Path path, long size) {
+
+        Long previous = files.put(path, size);
+
+        total += size - (previous == null ? 0 : previous);
+
+    }
+
+    private synchronized void remove(Path path) {
+
+        Long previous = files.remove(path);
+
+        total -= previous == null ? 0 : previous;
+
+    }
+
+    synchronized long getTotal() {
+        return total;
+    }
+
+}
@@ -0,0 +1,159 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import io.grpc.stub.StreamObserver;
+
+import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickBatch;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+/**
+ * Stream observer which gathers the ticks into a batch, until either the size or the time window is reached.
+ *
+ * A failure of the timer flush is passed to the failure handler, which is expected to terminate the stream, since there
+ * is no caller to propagate the failure to.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Batcher implements StreamObserver<TickResponse>, Runnable {
+
+    private final TickBatch.Builder builder = TickBatch.newBuilder();
+
+    private final StreamObserver<TickBatch> delegate;
+
+    private final ScheduledExecutorService executor;
+
+    private final int size;
+
+    private final long window;
+
+    private ScheduledFuture<?> future;
+
+    private volatile Consumer<RuntimeException> failureHandler;
+
+    public Batcher(StreamObserver<TickBatch> delegate, ScheduledExecutorService executor, int size, long window) {
+        this.delegate = Objects.requireNonNull(delegate, "Observer is required.");
+        this.executor = Objects.requireNonNull(executor, "Executor is required.");
+        this.size = size;
+        this.window = window;
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    public void setOnFailureHandler(Consumer<RuntimeException> handler) {
+        this.failureHandler = handler;
+    }
+
+    @Override
+    public synchronized void onNext(TickResponse value) {
+
+        builder.addTicks(value);
+
+        if (builder.getTicksCount() >= size || window <= 0) {
+
+            flush();
+
+            return;
+
+        }
+
+        if (future == null) {
+            future = executor.schedule(this, window, MICROSECONDS);
+        }
+
+    }
+
+    @Override
+    public synchronized void onError(Throwable t) {
+
+        cancel();
+
+        builder.clear();
+
+        delegate.onError(t);
+
+    }
+
+    @Override
+    public synchronized void onCompleted() {
+
+        flush();
+
+        delegate.onCompleted();
+
+    }
+
+    @Override
+    public void run() {
+
+        try {
+
+            synchronized (this) {
+
+                future = null;
+
+                flush();
+
+            }
+
+        } catch (RuntimeException e) {
+
+            Consumer<RuntimeException> handler = failureHandler;
+
+            if (handler != null) {
+
+                handler.accept(e); // Outside of the monitor, as the handler may terminate the stream.
+
+                return;
+
+            }
+
+            try {
+
+                onError(e);
+
+            } catch (RuntimeException x) {
+                // Ignore. Expected to fail if the client has already disconnected.
+            }
+
+        }
+
+    }
+
+    private void cancel() {
+
+        if (future != null) {
+
+            future.cancel(false);
+
+            future = null;
+
+        }
+
+    }
+
+    private void flush() {
+
+        cancel();
+
+        if (builder.getTicksCount() == 0) {
+            return;
+        }
+
+        TickBatch batch = builder.build();
+
+        builder.clear();
+
+        delegate.onNext(batch);
+
+    }
+
+}
@@ -0,0 +1,169 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.Instrument;
+import io.grpc.stub.StreamObserver;
+
+import java.util.List;
+import java.util.Objects;
+
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.DepthLevel;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.DepthResponse;
+
+/**
+ * Order book of an instrument, which computes the level changes against the previous book.
+ *
+ * The changes are computed once per tick and shared across the observers. The new observers are held as pending,
+ * and receive the snapshot of the book on the next update before they receive the changes.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Book {
+
+    private final Instrument instrument;
+
+    private final Depth last;
+
+    private volatile List<StreamObserver<DepthResponse>> observers = List.of(); // Copy-on-write
+
+    private volatile List<StreamObserver<DepthResponse>> pending = List.of(); // Copy-on-write
+
+    private long time;
+
+    public Book(Instrument instrument, int levels) {
+        this.instrument = Objects.requireNonNull(instrument, "Instrument is required.");
+        this.last = new Depth(levels);
+    }
+
+    public Instrument getInstrument() {
+        return instrument;
+    }
+
+    public List<StreamObserver<DepthResponse>> getObservers() {
+        return observers;
+    }
+
+    public void setObservers(List<StreamObserver<DepthResponse>> observers) {
+        this.observers = List.copyOf(observers);
+    }
+
+    public List<StreamObserver<DepthResponse>> getPending() {
+        return pending;
+    }
+
+    public void setPending(List<StreamObserver<DepthResponse>> pending) {
+        this.pending = List.copyOf(pending);
+    }
+
+    /**
+     * Apply the depth of the tick to the book.
+     *
+     * @return Level changes against the previous book. Null if unchanged.
+     */
+    public synchronized DepthResponse onDepth(long time, Depth depth) {
+
+        DepthResponse.Builder builder = null;
+
+        for (int side = 0; side < 2; side++) {
+
+            boolean ask = side == 0;
+
+            int prevCount = ask ? last.getAskCount() : last.getBidCount();
+
+            int nextCount = ask ? depth.getAskCount() : depth.getBidCount();
+
+            int i = 0;
+
+            int j = 0;
+
+            while (i < prevCount || j < nextCount) {
+
+                double prevPrice = i < prevCount ? price(last, ask, i) : Double.NaN;
+
+                double nextPrice = j < nextCount ? price(depth, ask, j) : Double.NaN;
+
+                DepthLevel.Builder level;
+
+                if (j >= nextCount || (i < prevCount && (ask ? prevPrice < nextPrice : prevPrice > nextPrice))) {
+
+                    level = DepthLevel.newBuilder().setAction(DepthLevel.Action.REMOVE).setPrice(prevPrice);
+
+                    i++;
+
+                } else if (i >= prevCount || prevPrice != nextPrice) {
+
+                    level = DepthLevel.newBuilder().setAction(DepthLevel.Action.ADD)
+                            .setPrice(nextPrice).setSize(size(depth, ask, j));
+
+                    j++;
+
+                } else {
+
+                    double size = size(depth, ask, j);
+
+                    level = size == size(last, ask, i) ? null : DepthLevel.newBuilder()
+                            .setAction(DepthLevel.Action.CHANGE).setPrice(nextPrice).setSize(size);
+
+                    i++;
+
+                    j++;
+
+                }
+
+                if (level == null) {
+                    continue;
+                }
+
+                if (builder == null) {
+                    builder = DepthResponse.newBuilder().setSymbol(instrument.name()).setTime(time);
+                }
+
+                if (ask) {
+                    builder.addAsks(level);
+                } else {
+                    builder.addBids(level);
+                }
+
+            }
+
+        }
+
+        last.set(depth);
+
+        this.time = time;
+
+        return builder == null ? null : builder.build();
+
+    }
+
+    /**
+     * @return All the levels of the current book, added to the empty book.
+     */
+    public synchronized DepthResponse getSnapshot() {
+
+        DepthResponse.Builder builder = DepthResponse.newBuilder()
+                .setSymbol(instrument.name()).setTime(time).setSnapshot(true);
+
+        for (int i = 0; i < last.getAskCount(); i++) {
+            builder.addAsks(DepthLevel.newBuilder().setAction(DepthLevel.Action.ADD)
+                    .setPrice(last.getAskPrice(i)).setSize(last.getAskSize(i)));
+        }
+
+        for (int i = 0; i < last.getBidCount(); i++) {
+            builder.addBids(DepthLevel.newBuilder().setAction(DepthLevel.Action.ADD)
+                    .setPrice(last.getBidPrice(i)).setSize(last.getBidSize(i)));
+        }
+
+        return builder.build();
+
+    }
+
+    private static double price(Depth depth, boolean ask, int level) {
+        return ask ? depth.getAskPrice(level) : depth.getBidPrice(level);
+    }
+
+    private static double size(Depth depth, boolean ask, int level) {
+        return ask ? depth.getAskSize(level) : depth.getBidSize(level);
+    }
+
+}
@@ -3,15 +3,13 @@ package com.after_sunrise.dukascopy.grpc;
 import com.dukascopy.api.system.IClient;
 import com.dukascopy.api.system.ISystemListener;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.ref.Cleaner;
-import java.time.Clock;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 
 import static com.after_sunrise.dukascopy.grpc.Config.CK_CONNECTION_WAIT;
 import static com.after_sunrise.dukascopy.grpc.Config.CK_CREDENTIAL_JNLP;
@@ -31,31 +29,56 @@ public class Client implements ISystemListener, Runnable {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private final Clock clock;
+    private final String session;
 
     private final Properties properties;
 
-    private final Cleaner cleaner;
-
     private final IClient client;
 
     private final ScheduledExecutorService executor;
 
-    @Inject
-    public Client(Clock clock, Properties properties, Cleaner cleaner, IClient client, ScheduledExecutorService executor) {
-        this.clock = Objects.requireNonNull(clock, "Clock is required.");
+    private final ThreadFactory factory;
+
+    private final Journal journal;
+
+    private final Endpoint endpoint;
+
+    private final Router router;
+
+    public Client(String session, Properties properties, IClient client, ScheduledExecutorService executor,
+                  ThreadFactory factory, Journal journal, Endpoint endpoint, Router router) {
+        this.session = Objects.requireNonNull(session, "Session is required.");
         this.properties = Objects.requireNonNull(properties, "Properties is required.");
-        this.cleaner = Objects.requireNonNull(cleaner, "Cleaner is required.");
         this.client = Objects.requireNonNull(client, "IClient is required.");
         this.executor = Objects.requireNonNull(executor, "Executor is required.");
+        this.factory = Objects.requireNonNull(factory, "ThreadFactory is required.");
+        this.journal = Objects.requireNonNull(journal, "Journal is required.");
+        this.endpoint = Objects.requireNonNull(endpoint, "Endpoint is required.");
+        this.router = Objects.requireNonNull(router, "Router is required.");
         this.client.setSystemListener(this);
         this.executor.execute(this);
     }
 
+    public IClient getClient() {
+        return client;
+    }
+
+    /**
+     * Resolve the credential of the session, falling back to the common one if not configured for the session.
+     */
+    @VisibleForTesting
+    String getCredential(String key, String value) {
+
+        String common = properties.getProperty(key, value);
+
+        return session.isEmpty() ? common : properties.getProperty(key + "." + session, common);
+
+    }
+
     @Override
     public synchronized void onConnect() {
 
-        logger.info("IClient connected.");
+        logger.info("IClient connected : {}", session);
 
         startStrategy();
 
@@ -70,9 +93,9 @@ public class Client implements ISystemListener, Runnable {
 
         } else {
 
-            long id = client.startStrategy(new Strategy(clock, properties, cleaner, executor));
+            long id = client.startStrategy(new Strategy(session, properties, executor, factory, journal, endpoint, router));
 
-            logger.info("Started strategy : {}", id);
+            logger.info("Started strategy : {} ({})", id, session);
 
         }
 
@@ -81,7 +104,7 @@ public class Client implements ISystemListener, Runnable {
     @Override
     public synchronized void onDisconnect() {
 
-        logger.info("IClient disconnected.");
+        logger.info("IClient disconnected : {}", session);
 
         client.getStartedStrategies().forEach((id, strategy) -> {
 
@@ -108,13 +131,13 @@ public class Client implements ISystemListener, Runnable {
 
         }
 
-        String jnlp = properties.getProperty(CK_CREDENTIAL_JNLP, CV_CREDENTIAL_JNLP);
-        String user = properties.getProperty(CK_CREDENTIAL_USER, CV_CREDENTIAL_USER);
-        String pass = properties.getProperty(CK_CREDENTIAL_PASS, CV_CREDENTIAL_PASS);
+        String jnlp = getCredential(CK_CREDENTIAL_JNLP, CV_CREDENTIAL_JNLP);
+        String user = getCredential(CK_CREDENTIAL_USER, CV_CREDENTIAL_USER);
+        String pass = getCredential(CK_CREDENTIAL_PASS, CV_CREDENTIAL_PASS);
 
         try {
 
-            logger.info("IClient connecting... (url={}, user={})", jnlp, user);
+            logger.info("IClient connecting... (session={}, url={}, user={})", session, jnlp, user);
 
             client.connect(jnlp, user, pass);
 
@@ -0,0 +1,81 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.CompactTick;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+
+/**
+ * Client-side decoder of the {@code subscribeCompact} stream, which restores each {@link CompactTick}
+ * into the {@link TickResponse}. An instance holds the state of a single stream, and is not thread-safe.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ * @see CompactEncoder
+ */
+public class CompactDecoder {
+
+    private final Map<Integer, State> states = new HashMap<>();
+
+    public TickResponse decode(CompactTick tick) {
+
+        State state = states.get(tick.getId());
+
+        if (!tick.getSymbol().isEmpty()) {
+
+            state = new State(tick.getSymbol(), tick.getPriceScale(), tick.getSizeScale());
+
+            states.put(tick.getId(), state);
+
+        }
+
+        if (state == null) {
+            throw new IllegalArgumentException("Unknown id : " + tick.getId());
+        }
+
+        state.time += tick.getTime();
+        state.askPrice += tick.getAskPrice();
+        state.askSize += tick.getAskSize();
+        state.bidPrice += tick.getBidPrice();
+        state.bidSize += tick.getBidSize();
+
+        return TickResponse.newBuilder()
+                .setSymbol(state.symbol)
+                .setTime(state.time)
+                .setStale(tick.getStale())
+                .setAskPrice(state.askPrice / state.priceFactor)
+                .setAskSize(state.askSize / state.sizeFactor)
+                .setBidPrice(state.bidPrice / state.priceFactor)
+                .setBidSize(state.bidSize / state.sizeFactor)
+                .build();
+
+    }
+
+    private static class State {
+
+        private final String symbol;
+
+        private final double priceFactor;
+
+        private final double sizeFactor;
+
+        private long time;
+
+        private long askPrice;
+
+        private long askSize;
+
+        private long bidPrice;
+
+        private long bidSize;
+
+        private State(String symbol, int priceScale, int sizeScale) {
+            this.symbol = symbol;
+            this.priceFactor = Math.pow(10, priceScale);
+            this.sizeFactor = Math.pow(10, sizeScale);
+        }
+
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.Instrument;
+import io.grpc.stub.StreamObserver;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.CompactTick;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+
+/**
+ * Stream observer which encodes the ticks into {@link CompactTick}, delta from the previous tick of the same symbol.
+ *
+ * The first tick of each symbol assigns the id, and carries the symbol and the scales.
+ * Prices and sizes are scaled into integers by the number of decimal digits,
+ * and the fields without any change are omitted from the wire.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ * @see CompactDecoder
+ */
+public class CompactEncoder implements StreamObserver<TickResponse> {
+
+    private final Map<String, State> states = new HashMap<>();
+
+    private final StreamObserver<CompactTick> delegate;
+
+    private final int sizeScale;
+
+    public CompactEncoder(StreamObserver<CompactTick> delegate, int sizeScale) {
+        this.delegate = Objects.requireNonNull(delegate, "Observer is required.");
+        this.sizeScale = sizeScale;
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    @Override
+    public void onNext(TickResponse value) {
+
+        CompactTick.Builder builder = CompactTick.newBuilder();
+
+        State state = states.get(value.getSymbol());
+
+        if (state == null) {
+
+            Instrument instrument = Instrument.valueOf(value.getSymbol());
+
+            int priceScale = instrument == null ? 0 : instrument.getPipScale() + 1; // Pipette
+
+            state = new State(states.size() + 1, priceScale, sizeScale);
+
+            states.put(value.getSymbol(), state);
+
+            builder.setSymbol(value.getSymbol()).setPriceScale(priceScale).setSizeScale(sizeScale);
+
+        }
+
+        long askPrice = scale(value.getAskPrice(), state.priceFactor);
+        long askSize = scale(value.getAskSize(), state.sizeFactor);
+        long bidPrice = scale(value.getBidPrice(), state.priceFactor);
+        long bidSize = scale(value.getBidSize(), state.sizeFactor);
+
+        builder.setId(state.id)
+                .setTime(value.getTime() - state.time)
+                .setStale(value.getStale())
+                .setAskPrice(askPrice - state.askPrice)
+                .setAskSize(askSize - state.askSize)
+                .setBidPrice(bidPrice - state.bidPrice)
+                .setBidSize(bidSize - state.bidSize);
+
+        delegate.onNext(builder.build());
+
+        state.time = value.getTime();
+        state.askPrice = askPrice;
+        state.askSize = askSize;
+        state.bidPrice = bidPrice;
+        state.bidSize = bidSize;
+
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        delegate.onError(t);
+    }
+
+    @Override
+    public void onCompleted() {
+        delegate.onCompleted();
+    }
+
+    private static double factor(int scale) {
+        return Math.pow(10, scale);
+    }
+
+    private static long scale(double value, double factor) {
+        return Math.round(value * factor);
+    }
+
+    private static class State {
+
+        private final int id;
+
+        private final double priceFactor;
+
+        private final double sizeFactor;
+
+        private long time;
+
+        private long askPrice;
+
+        private long askSize;
+
+        private long bidPrice;
+
+        private long bidSize;
+
+        private State(int id, int priceScale, int sizeScale) {
+            this.id = id;
+            this.priceFactor = factor(priceScale);
+            this.sizeFactor = factor(sizeScale);
+        }
+
+    }
+
+}
@@ -8,7 +8,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
-import java.lang.ref.Cleaner;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -18,6 +17,7 @@ import java.time.Duration;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * @author takanori.takase
@@ -42,12 +42,99 @@ public class Config extends AbstractModule {
     public static final String CK_CREDENTIAL_PASS = CONF_PREFIX + "credential.pass";
     public static final String CV_CREDENTIAL_PASS = "bar";
 
+    public static final String CK_SESSIONS = CONF_PREFIX + "sessions";
+    public static final String CV_SESSIONS = "";
+
+    public static final String CK_SESSION_SYMBOLS = CONF_PREFIX + "session.symbols";
+    public static final String CV_SESSION_SYMBOLS = "";
+
+    public static final String CK_SESSION_STANDBY = CONF_PREFIX + "session.standby";
+    public static final String CV_SESSION_STANDBY = "";
+
     public static final String CK_CONNECTION_WAIT = CONF_PREFIX + "connection.wait";
     public static final Duration CV_CONNECTION_WAIT = Duration.ofSeconds(5);
 
     public static final String CK_CONNECTION_PATH = CONF_PREFIX + "connection.path";
     public static final String CV_CONNECTION_PATH = "32004";
 
+    public static final String CK_SERVER_EXECUTOR = CONF_PREFIX + "server.executor";
+    public static final String CV_SERVER_EXECUTOR = "POOL";
+
+    public static final String CK_SERVER_THREADS = CONF_PREFIX + "server.threads";
+    public static final int CV_SERVER_THREADS = Runtime.getRuntime().availableProcessors();
+
+    public static final String CK_TRANSPORT_NATIVE = CONF_PREFIX + "transport.native";
+    public static final boolean CV_TRANSPORT_NATIVE = true;
+
+    public static final String CK_TRANSPORT_REUSE_PORT = CONF_PREFIX + "transport.reuse.port";
+    public static final boolean CV_TRANSPORT_REUSE_PORT = false; // Allows another process to bind the same port.
+
+    public static final String CK_TRANSPORT_BOSS_THREADS = CONF_PREFIX + "transport.boss.threads";
+    public static final int CV_TRANSPORT_BOSS_THREADS = 1;
+
+    public static final String CK_TRANSPORT_WORKER_THREADS = CONF_PREFIX + "transport.worker.threads";
+    public static final int CV_TRANSPORT_WORKER_THREADS = 0; // Netty default
+
+    public static final String CK_DISPATCH_CAPACITY = CONF_PREFIX + "dispatch.capacity";
+    public static final int CV_DISPATCH_CAPACITY = 8192;
+
+    public static final String CK_DISPATCH_OVERFLOW = CONF_PREFIX + "dispatch.overflow";
+    public static final String CV_DISPATCH_OVERFLOW = "BLOCK";
+
+    public static final String CK_DISPATCH_SHARDS = CONF_PREFIX + "dispatch.shards";
+    public static final int CV_DISPATCH_SHARDS = Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
+
+    public static final String CK_ADMISSION_STREAMS = CONF_PREFIX + "admission.streams";
+    public static final int CV_ADMISSION_STREAMS = 64; // Per IP address of the peer, non-positive to disable.
+
+    public static final String CK_ADMISSION_SYMBOLS = CONF_PREFIX + "admission.symbols";
+    public static final int CV_ADMISSION_SYMBOLS = 256; // Per stream, non-positive to disable.
+
+    public static final String CK_ADMISSION_STATUS_RATE = CONF_PREFIX + "admission.status.rate";
+    public static final double CV_ADMISSION_STATUS_RATE = 10; // Per IP address of the peer per second, non-positive to disable.
+
+    public static final String CK_ADMISSION_STATUS_BURST = CONF_PREFIX + "admission.status.burst";
+    public static final int CV_ADMISSION_STATUS_BURST = 20;
+
+    public static final String CK_BATCH_SIZE = CONF_PREFIX + "batch.size";
+    public static final int CV_BATCH_SIZE = 64;
+
+    public static final String CK_BATCH_WINDOW = CONF_PREFIX + "batch.window";
+    public static final Duration CV_BATCH_WINDOW = Duration.ofMillis(1);
+
+    public static final String CK_COMPACT_SIZE_SCALE = CONF_PREFIX + "compact.size.scale";
+    public static final int CV_COMPACT_SIZE_SCALE = 2;
+
+    public static final String CK_HISTORY_SIZE = CONF_PREFIX + "history.size";
+    public static final int CV_HISTORY_SIZE = 1024;
+
+    public static final String CK_BAR_GRACE = CONF_PREFIX + "bar.grace";
+    public static final long CV_BAR_GRACE = 250; // Millis to wait for the late ticks, before the timer completes a bar.
+
+    public static final String CK_DEPTH_LEVELS = CONF_PREFIX + "depth.levels";
+    public static final int CV_DEPTH_LEVELS = 10;
+
+    public static final String CK_SUBSCRIPTION_DELAY = CONF_PREFIX + "subscription.delay";
+    public static final long CV_SUBSCRIPTION_DELAY = 100;
+
+    public static final String CK_JOURNAL_PATH = CONF_PREFIX + "journal.path";
+    public static final String CV_JOURNAL_PATH = "";
+
+    public static final String CK_JOURNAL_SIZE = CONF_PREFIX + "journal.size";
+    public static final long CV_JOURNAL_SIZE = 64 * 1024 * 1024;
+
+    public static final String CK_ARCHIVE_PATH = CONF_PREFIX + "archive.path";
+    public static final String CV_ARCHIVE_PATH = "";
+
+    public static final String CK_ARCHIVE_SIZE = CONF_PREFIX + "archive.size";
+    public static final long CV_ARCHIVE_SIZE = 1024L * 1024 * 1024;
+
+    public static final String CK_REPLAY_THREADS = CONF_PREFIX + "replay.threads";
+    public static final int CV_REPLAY_THREADS = 2;
+
+    public static final String CK_DOWNLOAD_THREADS = CONF_PREFIX + "download.threads";
+    public static final int CV_DOWNLOAD_THREADS = 2;
+
     public static final String PATH_PREFIX_EPOLL = "epoll:";
     public static final String PATH_PREFIX_KQUEUE = "kqueue:";
 
@@ -55,19 +142,26 @@ public class Config extends AbstractModule {
 
     private final ScheduledExecutorService executor;
 
-    public Config(IClient client, ScheduledExecutorService executor) {
+    private final ThreadFactory factory;
+
+    public Config(IClient client, ScheduledExecutorService executor, ThreadFactory factory) {
         this.client = Objects.requireNonNull(client, "IClient is required.");
         this.executor = Objects.requireNonNull(executor, "Executor is required.");
+        this.factory = Objects.requireNonNull(factory, "ThreadFactory is required.");
     }
 
     @Override
     protected void configure() {
         bind(Clock.class).toInstance(Clock.systemUTC());
         bind(Properties.class).toInstance(loadProperties(System.getProperty(CK_PROPERTIES, CV_PROPERTIES)));
-        bind(Cleaner.class).toInstance(Cleaner.create());
         bind(ScheduledExecutorService.class).toInstance(executor);
+        bind(ThreadFactory.class).toInstance(factory);
         bind(IClient.class).toInstance(client);
-        binder().bind(Client.class).asEagerSingleton();
+        binder().bind(Journal.class).asEagerSingleton();
+        binder().bind(Transport.class).asEagerSingleton();
+        binder().bind(Router.class).asEagerSingleton();
+        binder().bind(Endpoint.class).asEagerSingleton();
+        binder().bind(Sessions.class).asEagerSingleton();
     }
 
     @VisibleForTesting
@@ -0,0 +1,175 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+
+/**
+ * Stream observer which retains only the latest unsent tick per symbol.
+ *
+ * Every stream is serialized through an instance, which passes through the ticks when neither conflating nor throttling.
+ * Conflating observers (with a call) hold the ticks while the call is not ready, and flush them when the call becomes ready.
+ * Throttling observers hold every tick, and are flushed only by the timer at the interval, even when conflating, so that
+ * a ready transition between the timer runs does not bypass the interval.
+ *
+ * A failure within the ready handler is passed to the failure handler, which is expected to terminate the stream, instead
+ * of escaping into the gRPC listener.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Conflator implements StreamObserver<TickResponse>, Runnable {
+
+    private final Map<String, TickResponse> pending = new LinkedHashMap<>();
+
+    private final StreamObserver<TickResponse> delegate;
+
+    private final ServerCallStreamObserver<?> call;
+
+    private final long interval;
+
+    private volatile Consumer<RuntimeException> failureHandler;
+
+    public Conflator(StreamObserver<TickResponse> delegate, ServerCallStreamObserver<?> call, long interval) {
+
+        this.delegate = Objects.requireNonNull(delegate, "Observer is required.");
+
+        this.call = call;
+
+        this.interval = interval;
+
+        if (call != null && interval <= 0) {
+            call.setOnReadyHandler(this::onReady); // Throttled ones are flushed by the timer only.
+        }
+
+    }
+
+    @Override
+    public String toString() {
+        return delegate.toString();
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    StreamObserver<TickResponse> getDelegate() {
+        return delegate;
+    }
+
+    public void setOnFailureHandler(Consumer<RuntimeException> handler) {
+        this.failureHandler = handler;
+    }
+
+    @Override
+    public synchronized void onNext(TickResponse value) {
+
+        if (interval > 0) {
+
+            pending.put(value.getSymbol(), value); // Flushed by the timer.
+
+            return;
+
+        }
+
+        if (pending.isEmpty() && isReady()) {
+
+            delegate.onNext(value); // Fast path
+
+            return;
+
+        }
+
+        pending.put(value.getSymbol(), value);
+
+        flush();
+
+    }
+
+    @Override
+    public synchronized void onError(Throwable t) {
+
+        pending.clear();
+
+        delegate.onError(t);
+
+    }
+
+    @Override
+    public synchronized void onCompleted() {
+
+        pending.clear();
+
+        delegate.onCompleted();
+
+    }
+
+    @Override
+    public synchronized void run() {
+
+        flush();
+
+    }
+
+    private void onReady() {
+
+        try {
+
+            run();
+
+        } catch (RuntimeException e) {
+
+            Consumer<RuntimeException> handler = failureHandler;
+
+            if (handler != null) {
+
+                handler.accept(e); // Outside of the monitor, as the handler may terminate the stream.
+
+                return;
+
+            }
+
+            try {
+
+                onError(e);
+
+            } catch (RuntimeException x) {
+                // Ignore. Expected to fail if the client has already disconnected.
+            }
+
+        }
+
+    }
+
+    private boolean isReady() {
+        return call == null || call.isReady();
+    }
+
+    private void flush() {
+
+        Iterator<TickResponse> itr = pending.values().iterator();
+
+        while (itr.hasNext() && isReady()) {
+
+            TickResponse value = itr.next();
+
+            itr.remove();
+
+            delegate.onNext(value);
+
+        }
+
+    }
+
+    int getPending() {
+        return pending.size();
+    }
+
+}
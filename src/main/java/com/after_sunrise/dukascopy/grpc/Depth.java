@@ -0,0 +1,112 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.ITick;
+
+/**
+ * Price levels of a tick, kept in the primitive arrays which are reused across the ticks.
+ *
+ * Asks are ordered from the lowest price, and bids from the highest price, as provided by JForex.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Depth {
+
+    private final double[] askPrices;
+
+    private final double[] askSizes;
+
+    private final double[] bidPrices;
+
+    private final double[] bidSizes;
+
+    private int askCount;
+
+    private int bidCount;
+
+    public Depth(int levels) {
+        this.askPrices = new double[Math.max(levels, 0)];
+        this.askSizes = new double[askPrices.length];
+        this.bidPrices = new double[askPrices.length];
+        this.bidSizes = new double[askPrices.length];
+    }
+
+    public int getLevels() {
+        return askPrices.length;
+    }
+
+    public int getAskCount() {
+        return askCount;
+    }
+
+    public int getBidCount() {
+        return bidCount;
+    }
+
+    public double getAskPrice(int level) {
+        return askPrices[level];
+    }
+
+    public double getAskSize(int level) {
+        return askSizes[level];
+    }
+
+    public double getBidPrice(int level) {
+        return bidPrices[level];
+    }
+
+    public double getBidSize(int level) {
+        return bidSizes[level];
+    }
+
+    public boolean isEmpty() {
+        return askCount == 0 && bidCount == 0;
+    }
+
+    public void clear() {
+        askCount = 0;
+        bidCount = 0;
+    }
+
+    /**
+     * Copy the levels of the tick, up to the configured number of levels.
+     */
+    public void set(ITick tick) {
+
+        if (askPrices.length == 0) {
+            return; // Disabled
+        }
+
+        askCount = copy(tick.getAsks(), tick.getAskVolumes(), askPrices, askSizes);
+        bidCount = copy(tick.getBids(), tick.getBidVolumes(), bidPrices, bidSizes);
+
+    }
+
+    public void set(Depth depth) {
+        askCount = copy(depth.askPrices, depth.askSizes, depth.askCount, askPrices, askSizes);
+        bidCount = copy(depth.bidPrices, depth.bidSizes, depth.bidCount, bidPrices, bidSizes);
+    }
+
+    private static int copy(double[] prices, double[] sizes, double[] toPrices, double[] toSizes) {
+
+        if (prices == null || sizes == null) {
+            return 0;
+        }
+
+        return copy(prices, sizes, Math.min(prices.length, sizes.length), toPrices, toSizes);
+
+    }
+
+    private static int copy(double[] prices, double[] sizes, int count, double[] toPrices, double[] toSizes) {
+
+        int length = Math.min(count, toPrices.length);
+
+        System.arraycopy(prices, 0, toPrices, 0, length);
+
+        System.arraycopy(sizes, 0, toSizes, 0, length);
+
+        return length;
+
+    }
+
+}
@@ -0,0 +1,371 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import io.prometheus.client.Counter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_DEPTH_LEVELS;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_DISPATCH_CAPACITY;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_DISPATCH_OVERFLOW;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_DISPATCH_SHARDS;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_DEPTH_LEVELS;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_DISPATCH_CAPACITY;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_DISPATCH_OVERFLOW;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_DISPATCH_SHARDS;
+
+/**
+ * Single-producer ring buffers, which hand the ticks over from the JForex strategy thread to the dispatcher threads.
+ *
+ * Instruments are hashed to the shards, each of which is drained by its own thread, so that the fan-out of the
+ * different instruments runs in parallel. Ticks of an instrument are always dispatched by the same shard, in order.
+ *
+ * The ticks accepted by the service are journalled by the dispatching thread, so that the journal records the ticks
+ * distributed, without the duplicates from the redundant sessions.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Dispatcher implements AutoCloseable {
+
+    public enum Overflow {
+
+        /**
+         * Wait for the dispatcher thread to release a slot.
+         */
+        BLOCK,
+
+        /**
+         * Discard the tick.
+         */
+        DROP,
+
+        /**
+         * Discard the tick, and increment the overflow counter.
+         */
+        COUNT,
+
+    }
+
+    private static final Counter OVERFLOWS = Counter.build()
+            .name("dukas_grpc_dispatch_overflows_total")
+            .help("Number of ticks discarded by the dispatcher ring buffer overflow.")
+            .register();
+
+    private static final int SPINS = 100;
+
+    private static final long BACKOFF_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Service service;
+
+    private final Journal journal; // Null if not journalling.
+
+    private final Overflow overflow;
+
+    private final Shard[] shards;
+
+    private final Depth depth; // Accessed only by the producer, for the synchronous dispatch.
+
+    private volatile boolean running = true;
+
+    public Dispatcher(Properties properties, ThreadFactory factory, Service service) {
+        this(properties, factory, service, null);
+    }
+
+    public Dispatcher(Properties properties, ThreadFactory factory, Service service, Journal journal) {
+
+        this.service = Objects.requireNonNull(service, "Service is required.");
+
+        this.journal = journal;
+
+        int capacity = Integer.parseInt(properties.getProperty(CK_DISPATCH_CAPACITY, String.valueOf(CV_DISPATCH_CAPACITY)));
+
+        int count = Integer.parseInt(properties.getProperty(CK_DISPATCH_SHARDS, String.valueOf(CV_DISPATCH_SHARDS)));
+
+        this.overflow = Overflow.valueOf(properties.getProperty(CK_DISPATCH_OVERFLOW, CV_DISPATCH_OVERFLOW));
+
+        int levels = Integer.parseInt(properties.getProperty(CK_DEPTH_LEVELS, String.valueOf(CV_DEPTH_LEVELS)));
+
+        this.depth = new Depth(levels);
+
+        if (capacity <= 0) {
+
+            this.shards = null;
+
+            logger.info("Dispatching synchronously.");
+
+        } else {
+
+            int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+
+            this.shards = new Shard[Math.max(count, 1)];
+
+            Objects.requireNonNull(factory, "ThreadFactory is required.");
+
+            for (int i = 0; i < shards.length; i++) {
+                this.shards[i] = new Shard(size, levels, factory);
+            }
+
+            for (Shard shard : shards) {
+                shard.thread.start();
+            }
+
+            logger.info("Dispatching asynchronously : capacity={}, overflow={}, shards={}", size, overflow, shards.length);
+
+        }
+
+    }
+
+    @Override
+    public void close() {
+
+        running = false;
+
+        if (shards == null) {
+            return;
+        }
+
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+
+        try {
+
+            for (Shard shard : shards) {
+                shard.thread.join(TimeUnit.SECONDS.toMillis(1));
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+
+        }
+
+    }
+
+    public Service getService() {
+        return service;
+    }
+
+    public void onTick(Instrument instrument, ITick tick) {
+
+        if (instrument == null || tick == null) {
+            return;
+        }
+
+        if (shards == null) {
+
+            if (!service.onTick(instrument, tick.getTime(), tick.getAsk(), tick.getAskVolume(), tick.getBid(), tick.getBidVolume())) {
+                return; // Duplicate, of which the depth would roll back the book.
+            }
+
+            if (journal != null) {
+                journal.onTick(instrument, tick); // Only the accepted ones, without the copies from the standby.
+            }
+
+            if (!service.hasDepth(instrument)) {
+                return;
+            }
+
+            depth.set(tick);
+
+            if (!depth.isEmpty()) {
+                service.onDepth(instrument, tick.getTime(), depth);
+            }
+
+            return;
+
+        }
+
+        Shard shard = shards.length == 1 ? shards[0]
+                : shards[Math.floorMod(instrument.name().hashCode(), shards.length)]; // Name hash is cached.
+
+        shard.publish(instrument, tick);
+
+    }
+
+    private class Shard implements Runnable {
+
+        private final Entry[] entries;
+
+        private final int mask;
+
+        private final AtomicLong published = new AtomicLong(-1);
+
+        private final AtomicLong consumed = new AtomicLong(-1);
+
+        private final Thread thread;
+
+        private volatile boolean waiting;
+
+        private long claimed = -1; // Accessed only by the producer.
+
+        private Shard(int size, int levels, ThreadFactory factory) {
+
+            this.entries = new Entry[size];
+
+            for (int i = 0; i < size; i++) {
+                this.entries[i] = new Entry(levels);
+            }
+
+            this.mask = size - 1;
+
+            this.thread = factory.newThread(this);
+
+        }
+
+        private void publish(Instrument instrument, ITick tick) {
+
+            long sequence = claimed + 1;
+
+            long wrap = sequence - entries.length;
+
+            int spins = 0;
+
+            while (wrap > consumed.get()) {
+
+                if (overflow == Overflow.COUNT) {
+                    OVERFLOWS.inc();
+                }
+
+                if (overflow != Overflow.BLOCK || !running) {
+                    return;
+                }
+
+                if (++spins < SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    LockSupport.parkNanos(this, BACKOFF_NANOS); // Not unparked by the consumer, so back off.
+                }
+
+            }
+
+            Entry entry = entries[(int) (sequence & mask)];
+            entry.instrument = instrument;
+            entry.time = tick.getTime();
+            entry.askPrice = tick.getAsk();
+            entry.askSize = tick.getAskVolume();
+            entry.bidPrice = tick.getBid();
+            entry.bidSize = tick.getBidVolume();
+
+            if (service.hasDepth(instrument)) {
+                entry.depth.set(tick);
+            } else {
+                entry.depth.clear(); // Skip copying the levels without the depth listeners.
+            }
+
+            claimed = sequence;
+
+            published.set(sequence);
+
+            if (waiting) {
+                LockSupport.unpark(thread);
+            }
+
+        }
+
+        @Override
+        public void run() {
+
+            logger.debug("Dispatcher started.");
+
+            long next = consumed.get() + 1;
+
+            int idle = 0;
+
+            while (running) {
+
+                long available = published.get();
+
+                if (available < next) {
+
+                    if (++idle < SPINS) {
+
+                        Thread.onSpinWait();
+
+                    } else {
+
+                        waiting = true;
+
+                        if (published.get() < next && running) {
+                            LockSupport.park(this); // Unparked by the producer, or by the close.
+                        }
+
+                        waiting = false;
+
+                    }
+
+                    continue;
+
+                }
+
+                idle = 0;
+
+                for (; next <= available; next++) {
+
+                    Entry entry = entries[(int) (next & mask)];
+
+                    try {
+
+                        boolean accepted = service.onTick(entry.instrument, entry.time,
+                                entry.askPrice, entry.askSize, entry.bidPrice, entry.bidSize);
+
+                        if (accepted && journal != null) {
+                            journal.append(entry.instrument, entry.time, entry.askPrice, entry.askSize, entry.bidPrice, entry.bidSize);
+                        }
+
+                        if (accepted && !entry.depth.isEmpty()) {
+                            service.onDepth(entry.instrument, entry.time, entry.depth);
+                        }
+
+                    } catch (RuntimeException e) {
+
+                        logger.warn("Dispatch failure : {}", entry.instrument, e);
+
+                    }
+
+                    consumed.lazySet(next);
+
+                }
+
+            }
+
+            logger.debug("Dispatcher stopped.");
+
+        }
+
+    }
+
+    private static class Entry {
+
+        private final Depth depth;
+
+        private Instrument instrument;
+
+        private long time;
+
+        private double askPrice;
+
+        private double askSize;
+
+        private double bidPrice;
+
+        private double bidSize;
+
+        private Entry(int levels) {
+            this.depth = new Depth(levels);
+        }
+
+    }
+
+}
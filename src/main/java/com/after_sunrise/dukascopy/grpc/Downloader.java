@@ -0,0 +1,464 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.IBar;
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.JFException;
+import com.dukascopy.api.OfferSide;
+import com.dukascopy.api.Period;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.after_sunrise.dukascopy.grpc.Archive.HOUR_MILLIS;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.BarBatch;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.BarResponse;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.DownloadRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickBatch;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+
+/**
+ * Streams the historical ticks and bars read through the {@link com.dukascopy.api.IHistory} of the running session.
+ *
+ * Ticks are paged by the hour, and the completed hours are cached in the {@link Archive}, so that the repeated
+ * downloads of the same range are served from the local disk. Bars are paged by a fixed number of bars, up to the last completed bar.
+ *
+ * Pages are produced on the dedicated executor, which may block on the history, one page per task while the stream
+ * is ready, and are resumed by the ready handler. The gRPC threads are never blocked by the downloads.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Downloader {
+
+    static final int BAR_CHUNK = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Router router;
+
+    private final Archive archive;
+
+    private final Executor executor;
+
+    public Downloader(Clock clock, Properties properties, Router router, Executor executor) {
+        this.router = Objects.requireNonNull(router, "Router is required.");
+        this.executor = Objects.requireNonNull(executor, "Executor is required.");
+        this.archive = new Archive(clock, properties);
+    }
+
+    /**
+     * Validate the requested range, and clamp the end time to the current time of the session.
+     *
+     * @return End time, or null if rejected.
+     */
+    private Long validate(DownloadRequest request, IContext context, StreamObserver<?> observer) {
+
+        long start = request.getStartTime();
+
+        long end = request.getEndTime();
+
+        if (end <= 0 || start > end) {
+
+            observer.onError(Status.INVALID_ARGUMENT
+                    .withDescription("Invalid time range : " + start + " - " + end).asRuntimeException());
+
+            return null;
+
+        }
+
+        return Math.min(end, context.getTime());
+
+    }
+
+    public void getTicks(DownloadRequest request, StreamObserver<TickBatch> observer) {
+
+        Instrument instrument = Instrument.valueOf(request.getSymbol());
+
+        if (instrument == null) {
+
+            observer.onError(new IOException("Unknown symbol : " + request.getSymbol()));
+
+            return;
+
+        }
+
+        IContext context = router.getContext(instrument);
+
+        if (context == null) {
+
+            observer.onError(new IOException("Session is not running : " + instrument.name()));
+
+            return;
+
+        }
+
+        Long end = validate(request, context, observer);
+
+        if (end == null) {
+            return;
+        }
+
+        long start = request.getStartTime();
+
+        logger.info("Downloading ticks : {} ({} - {})", instrument.name(), start, end);
+
+        new Pager<>(observer) {
+
+            private long hour = Archive.toHour(start);
+
+            @Override
+            boolean page() throws Exception {
+
+                if (hour > end) {
+                    return false;
+                }
+
+                TickBatch.Builder batch = TickBatch.newBuilder();
+
+                for (TickResponse tick : load(instrument, hour)) {
+
+                    if (start <= tick.getTime() && tick.getTime() <= end) {
+                        batch.addTicks(tick);
+                    }
+
+                }
+
+                hour += HOUR_MILLIS;
+
+                if (batch.getTicksCount() > 0) {
+                    observer.onNext(batch.build());
+                }
+
+                return true;
+
+            }
+
+            @Override
+            public String toString() {
+                return "ticks:" + instrument.name();
+            }
+        }.start();
+
+    }
+
+    private List<TickResponse> load(Instrument instrument, long hour) throws IOException, JFException {
+
+        List<TickResponse> cached = archive.read(instrument, hour);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        IContext context = router.getContext(instrument);
+
+        if (context == null) {
+            throw new IOException("Session is not running : " + instrument.name());
+        }
+
+        List<ITick> ticks = context.getHistory().getTicks(instrument, hour, hour + HOUR_MILLIS - 1);
+
+        List<TickResponse> values = new ArrayList<>(ticks.size());
+
+        for (ITick tick : ticks) {
+            values.add(TickResponse.newBuilder()
+                    .setSymbol(instrument.name())
+                    .setTime(tick.getTime())
+                    .setAskPrice(tick.getAsk())
+                    .setAskSize(tick.getAskVolume())
+                    .setBidPrice(tick.getBid())
+                    .setBidSize(tick.getBidVolume())
+                    .build());
+        }
+
+        if (hour + HOUR_MILLIS <= context.getTime()) {
+
+            try {
+
+                archive.write(instrument, hour, values); // Only the completed hours.
+
+            } catch (IOException e) {
+
+                logger.warn("Failed to archive : {} - {}", instrument.name(), hour, e);
+
+            }
+
+        }
+
+        return values;
+
+    }
+
+    public void getBars(DownloadRequest request, StreamObserver<BarBatch> observer) {
+
+        Instrument instrument = Instrument.valueOf(request.getSymbol());
+
+        if (instrument == null) {
+
+            observer.onError(new IOException("Unknown symbol : " + request.getSymbol()));
+
+            return;
+
+        }
+
+        long interval = request.getIntervalMillis();
+
+        Period period = toPeriod(interval);
+
+        if (period == null) {
+
+            observer.onError(new IOException("Invalid interval : " + interval));
+
+            return;
+
+        }
+
+        IContext context = router.getContext(instrument);
+
+        if (context == null) {
+
+            observer.onError(new IOException("Session is not running : " + instrument.name()));
+
+            return;
+
+        }
+
+        Long until = validate(request, context, observer);
+
+        if (until == null) {
+            return;
+        }
+
+        long start = Math.floorDiv(request.getStartTime(), interval) * interval;
+
+        long last = Math.floorDiv(context.getTime(), interval) * interval - interval; // Excludes the bar still forming.
+
+        long end = Math.min(Math.floorDiv(until, interval) * interval, last);
+
+        logger.info("Downloading bars : {} ({} - {}, {})", instrument.name(), start, end, period);
+
+        new Pager<>(observer) {
+
+            private long from = start;
+
+            @Override
+            boolean page() throws Exception {
+
+                if (from > end) {
+                    return false;
+                }
+
+                long to = Math.min(from + interval * (BAR_CHUNK - 1), end);
+
+                List<IBar> asks = context.getHistory().getBars(instrument, period, OfferSide.ASK, from, to);
+
+                List<IBar> bids = context.getHistory().getBars(instrument, period, OfferSide.BID, from, to);
+
+                from += interval * BAR_CHUNK;
+
+                BarBatch batch = merge(instrument, interval, asks, bids);
+
+                if (batch.getBarsCount() > 0) {
+                    observer.onNext(batch);
+                }
+
+                return true;
+
+            }
+
+            @Override
+            public String toString() {
+                return "bars:" + instrument.name();
+            }
+        }.start();
+
+    }
+
+    private static Period toPeriod(long interval) {
+
+        for (Period p : Period.values()) {
+
+            if (interval > 0 && p.getInterval() == interval) {
+                return p;
+            }
+
+        }
+
+        return null;
+
+    }
+
+    private static BarBatch merge(Instrument instrument, long interval, List<IBar> asks, List<IBar> bids) {
+
+        BarBatch.Builder batch = BarBatch.newBuilder();
+
+        int i = 0;
+
+        int j = 0;
+
+        while (i < asks.size() || j < bids.size()) {
+
+            IBar ask = i < asks.size() ? asks.get(i) : null;
+
+            IBar bid = j < bids.size() ? bids.get(j) : null;
+
+            long time = Math.min(ask == null ? Long.MAX_VALUE : ask.getTime(), bid == null ? Long.MAX_VALUE : bid.getTime());
+
+            BarResponse.Builder bar = BarResponse.newBuilder()
+                    .setSymbol(instrument.name()).setIntervalMillis(interval).setTime(time);
+
+            if (ask != null && ask.getTime() == time) {
+
+                bar.setAskOpen(ask.getOpen()).setAskHigh(ask.getHigh()).setAskLow(ask.getLow())
+                        .setAskClose(ask.getClose()).setAskVolume(ask.getVolume());
+
+                i++;
+
+            }
+
+            if (bid != null && bid.getTime() == time) {
+
+                bar.setBidOpen(bid.getOpen()).setBidHigh(bid.getHigh()).setBidLow(bid.getLow())
+                        .setBidClose(bid.getClose()).setBidVolume(bid.getVolume());
+
+                j++;
+
+            }
+
+            batch.addBars(bar);
+
+        }
+
+        return batch.build();
+
+    }
+
+    /**
+     * Produces the pages one at a time on the executor, while the stream is ready.
+     */
+    private abstract class Pager<V> implements Runnable {
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private final StreamObserver<V> observer;
+
+        private final ServerCallStreamObserver<V> call;
+
+        private volatile boolean cancelled;
+
+        private boolean done; // Guarded by this.
+
+        private Pager(StreamObserver<V> observer) {
+            this.observer = observer;
+            this.call = observer instanceof ServerCallStreamObserver ? (ServerCallStreamObserver<V>) observer : null;
+        }
+
+        /**
+         * Send the next page, if any.
+         *
+         * @return False if no more pages.
+         */
+        abstract boolean page() throws Exception;
+
+        void start() {
+
+            if (call != null) {
+                call.setOnCancelHandler(() -> cancelled = true);
+                call.setOnReadyHandler(this::schedule);
+            }
+
+            schedule();
+
+        }
+
+        private void schedule() {
+
+            if (cancelled || !scheduled.compareAndSet(false, true)) {
+                return; // Already scheduled.
+            }
+
+            try {
+
+                executor.execute(this);
+
+            } catch (RejectedExecutionException e) {
+
+                scheduled.set(false);
+
+                fail(Status.UNAVAILABLE.withDescription("Download is shutting down.").withCause(e).asRuntimeException());
+
+            }
+
+        }
+
+        private synchronized void fail(Exception e) {
+
+            if (done) {
+                return;
+            }
+
+            done = true;
+
+            logger.warn("Failed to download : {}", this, e);
+
+            try {
+
+                observer.onError(e);
+
+            } catch (RuntimeException x) {
+                // Ignore. Expected to fail if the client has already disconnected.
+            }
+
+        }
+
+        @Override
+        public synchronized void run() {
+
+            scheduled.set(false);
+
+            if (cancelled || done) {
+                return;
+            }
+
+            if (call != null && !call.isReady()) {
+                return; // Resumed by the ready handler.
+            }
+
+            try {
+
+                if (page()) {
+
+                    schedule();
+
+                    return;
+
+                }
+
+                done = true;
+
+                observer.onCompleted();
+
+            } catch (Exception e) {
+
+                fail(e);
+
+            }
+
+        }
+
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.google.inject.Inject;
+import io.grpc.Server;
+import io.grpc.ServerInterceptors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_CONNECTION_PATH;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_SERVER_EXECUTOR;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_SERVER_THREADS;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_CONNECTION_PATH;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_SERVER_EXECUTOR;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_SERVER_THREADS;
+
+/**
+ * gRPC server and the service shared by all the sessions.
+ *
+ * The server is started by the first session to start, and kept running while the sessions reconnect, so that the
+ * streams of the instruments on the healthy sessions are not interrupted.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Endpoint implements AutoCloseable {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Properties properties;
+
+    private final ScheduledExecutorService executor;
+
+    private final ThreadFactory factory;
+
+    private final Transport transport;
+
+    private final Service service;
+
+    private final Admission admission;
+
+    private Server server; // Guarded by this.
+
+    private Executor handlers; // Guarded by this.
+
+    private boolean closed; // Guarded by this.
+
+    @Inject
+    public Endpoint(Clock clock, Properties properties, ScheduledExecutorService executor,
+                    ThreadFactory factory, Transport transport, Router router) {
+        this.properties = Objects.requireNonNull(properties, "Properties is required.");
+        this.executor = Objects.requireNonNull(executor, "Executor is required.");
+        this.factory = Objects.requireNonNull(factory, "ThreadFactory is required.");
+        this.transport = Objects.requireNonNull(transport, "Transport is required.");
+        this.service = new Service(clock, properties, executor, factory, router);
+        this.admission = new Admission(clock, properties);
+    }
+
+    public Service getService() {
+        return service;
+    }
+
+    /**
+     * Start the server, if not already started.
+     *
+     * @throws IOException If failed to bind the server.
+     * @throws IllegalStateException If already closed, since the service has been shut down.
+     */
+    public synchronized void start() throws IOException {
+
+        if (closed) {
+            throw new IllegalStateException("Endpoint is closed.");
+        }
+
+        if (server != null) {
+            return;
+        }
+
+        String path = properties.getProperty(CK_CONNECTION_PATH, CV_CONNECTION_PATH);
+
+        logger.info("Starting server : {}", path);
+
+        ServerExecutor type = ServerExecutor.valueOf(properties.getProperty(CK_SERVER_EXECUTOR, CV_SERVER_EXECUTOR));
+
+        int threads = Integer.parseInt(properties.getProperty(CK_SERVER_THREADS, String.valueOf(CV_SERVER_THREADS)));
+
+        Executor pool = type.create(executor, factory, threads);
+
+        logger.info("Server executor : {} ({})", type, pool.getClass().getSimpleName());
+
+        try {
+
+            server = transport.newServerBuilder(path)
+                    .executor(pool)
+                    .addService(ServerInterceptors.intercept(service.createServiceDefinition(), admission))
+                    .build().start();
+
+            handlers = pool;
+
+        } catch (IOException | RuntimeException e) {
+
+            shutdown(pool);
+
+            throw e;
+
+        }
+
+    }
+
+    @Override
+    public synchronized void close() {
+
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+
+        logger.info("Terminating server.");
+
+        if (server != null) {
+            server.shutdownNow();
+        }
+
+        service.onShutdown(); // Even if never bound, to release the pools.
+
+        if (handlers != null) {
+            shutdown(handlers);
+        }
+
+        server = null;
+
+        handlers = null;
+
+    }
+
+    private void shutdown(Executor pool) {
+
+        if (pool instanceof ExecutorService && pool != executor) {
+            ((ExecutorService) pool).shutdown();
+        }
+
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.Instrument;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+
+/**
+ * Bounded ring of the recent ticks per instrument, stored in primitive arrays.
+ *
+ * Ticks are appended by a single writer thread without locking. Readers copy the entries out, and discard those
+ * which may have been overwritten during the copy, by validating against the sequence afterwards.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class History {
+
+    private final Map<Instrument, Ring> rings = new ConcurrentHashMap<>();
+
+    private final int capacity;
+
+    private final int size;
+
+    public History(int size) {
+        int s = Math.max(size, 1) + 1; // Spare slot for the one being written.
+        this.capacity = Integer.highestOneBit(s) == s ? s : Integer.highestOneBit(s) << 1;
+        this.size = capacity - 1;
+    }
+
+    public void onTick(Instrument instrument, long time, double askPrice, double askSize, double bidPrice, double bidSize) {
+
+        Ring ring = rings.get(instrument);
+
+        if (ring == null) {
+            ring = rings.computeIfAbsent(instrument, i -> new Ring(i, capacity));
+        }
+
+        ring.append(time, askPrice, askSize, bidPrice, bidSize);
+
+    }
+
+    public TickResponse getLatest(Instrument instrument) {
+
+        List<TickResponse> ticks = getTicks(instrument, 1);
+
+        return ticks.isEmpty() ? null : ticks.get(0);
+
+    }
+
+    /**
+     * Retrieve the recent ticks of the instrument, ordered from the oldest.
+     *
+     * @param instrument Instrument to retrieve.
+     * @param count      Maximum number of ticks. Zero or negative to retrieve all the retained ticks.
+     * @return Recent ticks. Empty if none.
+     */
+    public List<TickResponse> getTicks(Instrument instrument, int count) {
+
+        Ring ring = rings.get(instrument);
+
+        if (ring == null) {
+            return List.of();
+        }
+
+        return ring.read(count <= 0 ? size : Math.min(count, size));
+
+    }
+
+    private static class Ring {
+
+        private final String symbol;
+
+        private final int mask;
+
+        private final long[] times;
+
+        private final double[] askPrices;
+
+        private final double[] askSizes;
+
+        private final double[] bidPrices;
+
+        private final double[] bidSizes;
+
+        private volatile long sequence; // Number of ticks appended.
+
+        private Ring(Instrument instrument, int capacity) {
+            this.symbol = instrument.name();
+            this.mask = capacity - 1;
+            this.times = new long[capacity];
+            this.askPrices = new double[capacity];
+            this.askSizes = new double[capacity];
+            this.bidPrices = new double[capacity];
+            this.bidSizes = new double[capacity];
+        }
+
+        private void append(long time, double askPrice, double askSize, double bidPrice, double bidSize) {
+
+            long s = sequence; // Single writer
+
+            int i = (int) (s & mask);
+
+            VarHandle.storeStoreFence(); // Keep the slot writes after the previous publication.
+
+            times[i] = time;
+            askPrices[i] = askPrice;
+            askSizes[i] = askSize;
+            bidPrices[i] = bidPrice;
+            bidSizes[i] = bidSize;
+
+            sequence = s + 1;
+
+        }
+
+        private List<TickResponse> read(int count) {
+
+            long end = sequence;
+
+            long start = Math.max(end - count, 0);
+
+            List<TickResponse> ticks = new ArrayList<>((int) (end - start));
+
+            for (long s = start; s < end; s++) {
+
+                int i = (int) (s & mask);
+
+                ticks.add(TickResponse.newBuilder()
+                        .setSymbol(symbol)
+                        .setTime(times[i])
+                        .setAskPrice(askPrices[i])
+                        .setAskSize(askSizes[i])
+                        .setBidPrice(bidPrices[i])
+                        .setBidSize(bidSizes[i])
+                        .build());
+
+            }
+
+            VarHandle.loadLoadFence(); // Keep the slot reads before the validation.
+
+            long valid = sequence - mask; // Slots before this may have been overwritten while copying.
+
+            return valid > start ? ticks.subList((int) Math.min(valid - start, ticks.size()), ticks.size()) : ticks;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,304 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.google.inject.Inject;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_JOURNAL_PATH;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_JOURNAL_SIZE;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_JOURNAL_PATH;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_JOURNAL_SIZE;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only tick journal, written into memory-mapped segment files of fixed-width binary records.
+ *
+ * Segments are named {@code yyyyMMdd-nnnn.journal} after the UTC date of the ticks, and are rolled over when
+ * either the segment is full or the date advances. Late ticks carrying an earlier date, such as the ones from the other
+ * instruments around midnight, are appended to the current segment, instead of rolling a segment each time the date
+ * switches back and forth. Segments are unmapped when rolled over or closed. All values are little-endian.
+ * <pre>
+ * Header (64 bytes) : magic(int) | version(int) | record size(int) | reserved(int) | record count(long) | ...
+ * Record (64 bytes) : symbol(16 bytes, US-ASCII, zero-padded) | time(long) | ask price(double) | ask size(double)
+ *                     | bid price(double) | bid size(double) | receive time(long)
+ * </pre>
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Journal implements AutoCloseable {
+
+    static final int MAGIC = 0x4a4b5544; // "DUKJ"
+
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 64;
+
+    static final int RECORD_SIZE = 64;
+
+    static final int SYMBOL_SIZE = 16;
+
+    static final int COUNT_OFFSET = 16;
+
+    static final String SUFFIX = ".journal";
+
+    static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+
+    private static final Object UNSAFE = findUnsafe();
+
+    private static final Method CLEANER = findCleaner();
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Map<Instrument, byte[]> symbols = new ConcurrentHashMap<>();
+
+    private final Clock clock;
+
+    private final Path directory;
+
+    private final int size;
+
+    private MappedByteBuffer buffer;
+
+    private long day = Long.MIN_VALUE;
+
+    private long skip = Long.MIN_VALUE;
+
+    private long count;
+
+    @Inject
+    public Journal(Clock clock, Properties properties) {
+
+        this.clock = Objects.requireNonNull(clock, "Clock is required.");
+
+        this.directory = resolveDirectory(properties);
+
+        long bytes = Long.parseLong(properties.getProperty(CK_JOURNAL_SIZE, String.valueOf(CV_JOURNAL_SIZE)));
+
+        this.size = (int) Math.min(Math.max(bytes, HEADER_SIZE + RECORD_SIZE), Integer.MAX_VALUE);
+
+        logger.info("Journal : {} ({} bytes/segment)", directory == null ? "disabled" : directory, size);
+
+    }
+
+    /**
+     * Resolve the journal directory from the configuration.
+     *
+     * @param properties Configuration.
+     * @return Absolute path of the directory. Null if the journal is disabled.
+     */
+    static Path resolveDirectory(Properties properties) {
+
+        String path = properties.getProperty(CK_JOURNAL_PATH, CV_JOURNAL_PATH);
+
+        return StringUtils.isBlank(path) ? null : Paths.get(path).toAbsolutePath();
+
+    }
+
+    @Override
+    public synchronized void close() {
+
+        if (buffer != null) {
+
+            buffer.force();
+
+            unmap(buffer);
+
+            buffer = null;
+
+        }
+
+        day = Long.MIN_VALUE;
+
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void onTick(Instrument instrument, ITick tick) {
+
+        if (directory == null || instrument == null || tick == null) {
+            return;
+        }
+
+        append(instrument, tick.getTime(), tick.getAsk(), tick.getAskVolume(), tick.getBid(), tick.getBidVolume());
+
+    }
+
+    public synchronized void append(Instrument instrument, long time, double askPrice, double askSize, double bidPrice, double bidSize) {
+
+        if (directory == null) {
+            return;
+        }
+
+        long d = Math.floorDiv(time, DAY_MILLIS);
+
+        if (buffer == null || d > day || buffer.remaining() < RECORD_SIZE) {
+
+            long next = Math.max(d, day); // Late ticks stay within the current date.
+
+            if (next <= skip) {
+                return;
+            }
+
+            try {
+
+                roll(next);
+
+            } catch (IOException e) {
+
+                skip = next;
+
+                logger.warn("Skipping journal for the day : {}", LocalDate.ofEpochDay(next), e);
+
+                return;
+
+            }
+
+        }
+
+        byte[] symbol = symbols.get(instrument);
+
+        if (symbol == null) {
+            symbol = symbols.computeIfAbsent(instrument, Journal::encode);
+        }
+
+        buffer.put(symbol);
+        buffer.putLong(time);
+        buffer.putDouble(askPrice);
+        buffer.putDouble(askSize);
+        buffer.putDouble(bidPrice);
+        buffer.putDouble(bidSize);
+        buffer.putLong(clock.millis());
+
+        buffer.putLong(COUNT_OFFSET, ++count);
+
+    }
+
+    private static byte[] encode(Instrument instrument) {
+        return Arrays.copyOf(instrument.name().getBytes(StandardCharsets.US_ASCII), SYMBOL_SIZE);
+    }
+
+    /**
+     * Release the mapping without waiting for the buffer to be garbage collected.
+     * The buffer must not be accessed afterwards. Left to the garbage collector if the JDK does not support it.
+     */
+    static void unmap(MappedByteBuffer buffer) {
+
+        if (CLEANER == null) {
+            return;
+        }
+
+        try {
+
+            CLEANER.invoke(UNSAFE, buffer);
+
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Ignore. Released on garbage collection.
+        }
+
+    }
+
+    private static Object findUnsafe() {
+
+        try {
+
+            Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+
+            field.setAccessible(true);
+
+            return field.get(null);
+
+        } catch (ReflectiveOperationException | RuntimeException e) {
+
+            return null;
+
+        }
+
+    }
+
+    private static Method findCleaner() {
+
+        try {
+
+            return UNSAFE == null ? null : UNSAFE.getClass().getMethod("invokeCleaner", ByteBuffer.class);
+
+        } catch (ReflectiveOperationException | RuntimeException e) {
+
+            return null;
+
+        }
+
+    }
+
+    private void roll(long d) throws IOException {
+
+        close();
+
+        Files.createDirectories(directory);
+
+        String date = LocalDate.ofEpochDay(d).format(DATE_FORMAT);
+
+        for (int i = 0; ; i++) {
+
+            Path path = directory.resolve(String.format("%s-%04d%s", date, i, SUFFIX));
+
+            if (Files.exists(path)) {
+                continue;
+            }
+
+            try (FileChannel channel = FileChannel.open(path, CREATE_NEW, READ, WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(RECORD_SIZE);
+            buffer.position(HEADER_SIZE);
+
+            day = d;
+
+            count = 0;
+
+            logger.info("Rolled journal : {}", path);
+
+            return;
+
+        }
+
+    }
+
+}
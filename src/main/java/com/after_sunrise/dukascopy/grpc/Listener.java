@@ -10,6 +10,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.servlet.ServletContextEvent;
+import java.io.IOException;
+import java.util.Optional;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
@@ -33,6 +35,8 @@ public class Listener extends GuiceServletContextListener implements ThreadFacto
 
     private final ScheduledExecutorService executor;
 
+    private volatile Injector injector;
+
     public Listener() throws ReflectiveOperationException {
 
         client = ClientFactory.getDefaultInstance();
@@ -66,9 +70,11 @@ public class Listener extends GuiceServletContextListener implements ThreadFacto
     @Override
     protected Injector getInjector() {
 
-        Config config = new Config(client, executor);
+        Config config = new Config(client, executor, this);
+
+        injector = Guice.createInjector(new ServletModule(), config);
 
-        return Guice.createInjector(new ServletModule(), config);
+        return injector;
 
     }
 
@@ -79,6 +85,20 @@ public class Listener extends GuiceServletContextListener implements ThreadFacto
 
         super.contextInitialized(servletContextEvent);
 
+        Optional.ofNullable(injector).ifPresent(i -> {
+
+            try {
+
+                i.getInstance(Endpoint.class).start(); // Bound once, regardless of the sessions.
+
+            } catch (IOException e) {
+
+                logger.warn("Failed to start server. Retrying on the session start.", e);
+
+            }
+
+        });
+
     }
 
     @Override
@@ -88,7 +108,12 @@ public class Listener extends GuiceServletContextListener implements ThreadFacto
 
         executor.shutdown();
 
-        client.disconnect();
+        Optional.ofNullable(injector).ifPresent(i -> {
+            i.getInstance(Sessions.class).close();
+            i.getInstance(Endpoint.class).close();
+            i.getInstance(Transport.class).close();
+            i.getInstance(Journal.class).close();
+        });
 
         super.contextDestroyed(servletContextEvent);
 
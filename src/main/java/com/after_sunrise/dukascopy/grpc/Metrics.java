@@ -0,0 +1,135 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.Instrument;
+import io.prometheus.client.Counter;
+import io.prometheus.client.Gauge;
+import io.prometheus.client.Histogram;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Prometheus collectors of the tick path.
+ *
+ * Labelled children are resolved once per instrument and cached, so that the updates on the tick path are only the
+ * striped adder increments without allocation.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Metrics {
+
+    private static final Counter RECEIVED = Counter.build()
+            .name("dukas_grpc_ticks_received_total")
+            .help("Number of ticks received from JForex.")
+            .labelNames("symbol")
+            .register();
+
+    private static final Counter SENT = Counter.build()
+            .name("dukas_grpc_ticks_sent_total")
+            .help("Number of ticks sent to the tick streams.")
+            .labelNames("symbol")
+            .register();
+
+    private static final Counter FAILURES = Counter.build()
+            .name("dukas_grpc_send_failures_total")
+            .help("Number of failures sending ticks to the tick streams.")
+            .labelNames("symbol")
+            .register();
+
+    private static final Counter DROPPED = Counter.build()
+            .name("dukas_grpc_ticks_dropped_total")
+            .help("Number of duplicate or out-of-order ticks dropped from the redundant sessions.")
+            .labelNames("symbol")
+            .register();
+
+    private static final Counter LATE = Counter.build()
+            .name("dukas_grpc_ticks_late_total")
+            .help("Number of ticks excluded from the bars completed before the tick arrived, per bar interval.")
+            .labelNames("symbol", "interval")
+            .register();
+
+    private static final Gauge LISTENERS = Gauge.build()
+            .name("dukas_grpc_listeners")
+            .help("Number of active tick streams.")
+            .labelNames("symbol")
+            .register();
+
+    private static final Histogram FANOUT = Histogram.build()
+            .name("dukas_grpc_fanout_seconds")
+            .help("Duration to send a tick to all the streams of the instrument.")
+            .buckets(0.000001, 0.000005, 0.00001, 0.00005, 0.0001, 0.0005, 0.001, 0.005, 0.01)
+            .register();
+
+    private static final Histogram LATENCY = Histogram.build()
+            .name("dukas_grpc_tick_latency_seconds")
+            .help("Duration from the tick time to the send, including the clock difference against the exchange.")
+            .buckets(0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 10)
+            .register();
+
+    private static final Map<Instrument, Metrics> CACHE = new ConcurrentHashMap<>();
+
+    public static Metrics of(Instrument instrument) {
+
+        Metrics metrics = CACHE.get(instrument);
+
+        if (metrics == null) {
+            metrics = CACHE.computeIfAbsent(instrument, Metrics::new);
+        }
+
+        return metrics;
+
+    }
+
+    private final Counter.Child received;
+
+    private final Counter.Child sent;
+
+    private final Counter.Child failures;
+
+    private final Counter.Child dropped;
+
+    private final String symbol;
+
+    private final Gauge.Child listeners;
+
+    private Metrics(Instrument instrument) {
+        this.received = RECEIVED.labels(instrument.name());
+        this.sent = SENT.labels(instrument.name());
+        this.failures = FAILURES.labels(instrument.name());
+        this.dropped = DROPPED.labels(instrument.name());
+        this.symbol = instrument.name();
+        this.listeners = LISTENERS.labels(instrument.name());
+    }
+
+    public void onReceived() {
+        received.inc();
+    }
+
+    public void onSent(long count, long nanos, long latencyMillis) {
+
+        sent.inc(count);
+
+        FANOUT.observe(nanos / 1e9);
+
+        LATENCY.observe(latencyMillis / 1e3);
+
+    }
+
+    public void onFailure() {
+        failures.inc();
+    }
+
+    public void onDropped() {
+        dropped.inc();
+    }
+
+    public void onLate(long interval) {
+        LATE.labels(symbol, String.valueOf(interval)).inc(); // Rare, without caching the children per interval.
+    }
+
+    public void onListeners(int count) {
+        listeners.set(count);
+    }
+
+}
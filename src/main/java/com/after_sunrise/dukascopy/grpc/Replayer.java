@@ -0,0 +1,384 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.Instrument;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Streams the ticks recorded by the {@link Journal}, paced by the tick time and the speed multiplier.
+ *
+ * Segment files are memory-mapped read-only, and the records are matched against the requested symbols in-place,
+ * without copying them out of the mapped region. Zero or negative speed replays as fast as the client can receive.
+ *
+ * Segments are listed and read on the executor, never on the calling thread. Replay is paused while the stream is not
+ * ready, and resumed by the ready handler, so that a slow client does not buffer the ticks without bounds.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Replayer implements Runnable {
+
+    private static final int CHUNK = 1024; // Yield the executor thread after this many ticks.
+
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final Clock clock;
+
+    private final ScheduledExecutorService executor;
+
+    private final StreamObserver<TickResponse> observer;
+
+    private final ServerCallStreamObserver<TickResponse> call;
+
+    private final String[] symbols;
+
+    private final long[] heads;
+
+    private final long[] tails;
+
+    private final long startTime;
+
+    private final long endTime;
+
+    private final double speed;
+
+    private Path directory; // Null once terminated.
+
+    private List<Path> paths; // Listed on the first run.
+
+    private int file;
+
+    private ByteBuffer buffer;
+
+    private long count;
+
+    private long index;
+
+    private int match;
+
+    private long originTime = Long.MIN_VALUE;
+
+    private long originClock;
+
+    private volatile boolean cancelled;
+
+    public Replayer(Clock clock, ScheduledExecutorService executor, StreamObserver<TickResponse> observer,
+                    Collection<Instrument> instruments, long startTime, long endTime, double speed) {
+
+        this.clock = Objects.requireNonNull(clock, "Clock is required.");
+        this.executor = Objects.requireNonNull(executor, "Executor is required.");
+        this.observer = Objects.requireNonNull(observer, "Observer is required.");
+        this.call = observer instanceof ServerCallStreamObserver ? (ServerCallStreamObserver<TickResponse>) observer : null;
+        this.symbols = instruments.stream().map(Instrument::name).toArray(String[]::new);
+        this.heads = new long[symbols.length];
+        this.tails = new long[symbols.length];
+        this.startTime = startTime;
+        this.endTime = endTime > 0 ? endTime : Long.MAX_VALUE;
+        this.speed = speed;
+
+        for (int i = 0; i < symbols.length; i++) {
+
+            ByteBuffer b = ByteBuffer.wrap(Arrays.copyOf(symbols[i].getBytes(StandardCharsets.US_ASCII), Journal.SYMBOL_SIZE));
+
+            b.order(ByteOrder.LITTLE_ENDIAN);
+
+            heads[i] = b.getLong(0);
+
+            tails[i] = b.getLong(Long.BYTES);
+
+        }
+
+    }
+
+    /**
+     * Start replaying the journal segments in the directory, which overlaps with the requested time range.
+     * The handlers are registered on the calling thread, as required by gRPC, and the rest runs on the executor.
+     *
+     * @param directory Journal directory.
+     */
+    public synchronized void start(Path directory) {
+
+        this.directory = Objects.requireNonNull(directory, "Directory is required.");
+
+        if (call != null) {
+            call.setOnCancelHandler(() -> cancelled = true);
+            call.setOnReadyHandler(() -> schedule(0));
+        }
+
+        schedule(0);
+
+    }
+
+    private List<Path> list(Path directory) throws IOException {
+
+        long startDay = Math.floorDiv(startTime, DAY_MILLIS);
+
+        long endDay = Math.floorDiv(endTime - 1, DAY_MILLIS) + 1; // Late ticks are in the segments of the next day.
+
+        List<Path> paths;
+
+        try (Stream<Path> stream = Files.list(directory)) {
+
+            paths = stream.filter(p -> {
+
+                String name = p.getFileName().toString();
+
+                if (!name.endsWith(Journal.SUFFIX) || name.length() < 8) {
+                    return false;
+                }
+
+                try {
+
+                    long day = LocalDate.parse(name.substring(0, 8), Journal.DATE_FORMAT).toEpochDay();
+
+                    return startDay <= day && day <= endDay;
+
+                } catch (RuntimeException e) {
+
+                    return false; // Not a journal segment.
+
+                }
+
+            }).sorted().collect(Collectors.toList());
+
+        }
+
+        logger.info("Replaying : {} ({} segments, {} symbols, speed={})", observer, paths.size(), symbols.length, speed);
+
+        return paths;
+
+    }
+
+    private void schedule(long delay) {
+
+        if (cancelled || !scheduled.compareAndSet(false, true)) {
+            return; // Already scheduled.
+        }
+
+        try {
+
+            if (delay > 0) {
+                executor.schedule(this, delay, MILLISECONDS);
+            } else {
+                executor.execute(this);
+            }
+
+        } catch (RejectedExecutionException e) {
+
+            scheduled.set(false);
+
+            fail(Status.UNAVAILABLE.withDescription("Replay is shutting down.").withCause(e).asRuntimeException());
+
+        }
+
+    }
+
+    private synchronized void fail(Exception e) {
+
+        if (directory == null) {
+            return;
+        }
+
+        directory = null;
+
+        paths = null;
+
+        buffer = null;
+
+        logger.info("Replay failure : {} - {}", observer, e.toString());
+
+        try {
+
+            observer.onError(e);
+
+        } catch (RuntimeException x) {
+            // Ignore. Expected to fail if the client has already disconnected.
+        }
+
+    }
+
+    @Override
+    public synchronized void run() {
+
+        scheduled.set(false);
+
+        if (cancelled || directory == null) {
+            return;
+        }
+
+        try {
+
+            if (paths == null) {
+                paths = list(directory);
+            }
+
+            for (int n = 0; n < CHUNK; n++) {
+
+                if (call != null && !call.isReady()) {
+                    return; // Resumed by the ready handler.
+                }
+
+                if (!advance()) {
+
+                    directory = null;
+
+                    paths = null;
+
+                    buffer = null;
+
+                    logger.info("Replayed : {}", observer);
+
+                    observer.onCompleted();
+
+                    return;
+
+                }
+
+                int offset = Journal.HEADER_SIZE + (int) index * Journal.RECORD_SIZE + Journal.SYMBOL_SIZE;
+
+                long time = buffer.getLong(offset);
+
+                if (speed > 0) {
+
+                    if (originTime == Long.MIN_VALUE) {
+                        originTime = time;
+                        originClock = clock.millis();
+                    }
+
+                    long delay = originClock + (long) ((time - originTime) / speed) - clock.millis();
+
+                    if (delay > 0) {
+
+                        schedule(delay);
+
+                        return;
+
+                    }
+
+                }
+
+                observer.onNext(TickResponse.newBuilder()
+                        .setSymbol(symbols[match])
+                        .setTime(time)
+                        .setAskPrice(buffer.getDouble(offset + Long.BYTES))
+                        .setAskSize(buffer.getDouble(offset + Long.BYTES * 2))
+                        .setBidPrice(buffer.getDouble(offset + Long.BYTES * 3))
+                        .setBidSize(buffer.getDouble(offset + Long.BYTES * 4))
+                        .build());
+
+                index++;
+
+            }
+
+            schedule(0);
+
+        } catch (IOException | RuntimeException e) {
+
+            fail(e);
+
+        }
+
+    }
+
+    /**
+     * Position the cursor to the next record matching the symbols and the time range.
+     *
+     * @return False if no more records.
+     */
+    private boolean advance() throws IOException {
+
+        while (true) {
+
+            for (; buffer != null && index < count; index++) {
+
+                int offset = Journal.HEADER_SIZE + (int) index * Journal.RECORD_SIZE;
+
+                long head = buffer.getLong(offset);
+
+                long tail = buffer.getLong(offset + Long.BYTES);
+
+                for (int i = 0; i < symbols.length; i++) {
+
+                    if (heads[i] != head || tails[i] != tail) {
+                        continue;
+                    }
+
+                    long time = buffer.getLong(offset + Journal.SYMBOL_SIZE);
+
+                    if (startTime <= time && time < endTime) {
+
+                        match = i;
+
+                        return true;
+
+                    }
+
+                }
+
+            }
+
+            if (file >= paths.size()) {
+                return false;
+            }
+
+            Path path = paths.get(file++);
+
+            MappedByteBuffer mapped;
+
+            try (FileChannel channel = FileChannel.open(path)) {
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (mapped.capacity() < Journal.HEADER_SIZE
+                    || mapped.getInt(0) != Journal.MAGIC
+                    || mapped.getInt(Integer.BYTES) != Journal.VERSION
+                    || mapped.getInt(Integer.BYTES * 2) != Journal.RECORD_SIZE) {
+                throw new IOException("Invalid journal segment : " + path);
+            }
+
+            buffer = mapped;
+
+            count = Math.min(mapped.getLong(Journal.COUNT_OFFSET),
+                    (mapped.capacity() - Journal.HEADER_SIZE) / Journal.RECORD_SIZE);
+
+            index = 0;
+
+            logger.debug("Replaying segment : {} ({} records)", path, count);
+
+        }
+
+    }
+
+}
@@ -0,0 +1,244 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.Instrument;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_SESSIONS;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_SESSION_STANDBY;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_SESSION_SYMBOLS;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_SESSIONS;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_SESSION_STANDBY;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_SESSION_SYMBOLS;
+
+/**
+ * Assigns the instruments to the JForex sessions, and keeps track of the context of each running session.
+ *
+ * Instruments are assigned to the session which lists the symbol in its configuration, or to the default session
+ * otherwise. The default session is the first session without the symbols configured, or the first session if all
+ * of them are configured.
+ *
+ * A standby session mirrors the subscriptions of its primary session, so that both of them feed the same instruments
+ * and the instruments are served by the standby while the primary reconnects. The duplicate ticks are expected to be
+ * dropped by the {@link Sequencer}.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Router {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Map<String, IContext> contexts = new ConcurrentHashMap<>();
+
+    private final Map<Instrument, String> assignments = new HashMap<>();
+
+    private final Map<String, String> primaries = new HashMap<>();
+
+    private final List<String> sessions;
+
+    private final String fallback;
+
+    @Inject
+    public Router(Properties properties) {
+
+        String[] names = StringUtils.split(properties.getProperty(CK_SESSIONS, CV_SESSIONS), ", ");
+
+        this.sessions = names == null || names.length == 0 ? List.of(CV_SESSIONS) : List.of(names);
+
+        String first = null;
+
+        for (String session : sessions) {
+
+            String primary = properties.getProperty(CK_SESSION_STANDBY + "." + session, CV_SESSION_STANDBY);
+
+            if (StringUtils.isNotBlank(primary)) {
+                primaries.put(session, primary.trim());
+            }
+
+        }
+
+        primaries.forEach((standby, primary) -> {
+            if (!sessions.contains(primary) || primaries.containsKey(primary)) {
+                throw new IllegalArgumentException("Invalid primary session : " + standby + " -> " + primary);
+            }
+        });
+
+        for (String session : sessions) {
+
+            if (primaries.containsKey(session)) {
+                continue; // Mirrors the primary.
+            }
+
+            String symbols = properties.getProperty(CK_SESSION_SYMBOLS + "." + session, CV_SESSION_SYMBOLS);
+
+            if (StringUtils.isBlank(symbols)) {
+
+                first = first == null ? session : first;
+
+                continue;
+
+            }
+
+            for (String symbol : StringUtils.split(symbols, ", ")) {
+
+                Instrument instrument = Instrument.valueOf(symbol);
+
+                if (instrument == null) {
+                    throw new IllegalArgumentException("Unknown symbol : " + symbol);
+                }
+
+                assignments.putIfAbsent(instrument, session);
+
+            }
+
+        }
+
+        this.fallback = first != null ? first : sessions.stream()
+                .filter(v -> !primaries.containsKey(v)).findFirst().orElse(sessions.get(0));
+
+        logger.info("Sessions : {} (default={}, assigned={}, standby={})", sessions, fallback, assignments.size(), primaries);
+
+    }
+
+    /**
+     * Create a router of the single session, which is already running with the context.
+     */
+    public static Router of(IContext context) {
+
+        Router router = new Router(new Properties());
+
+        router.onStart(CV_SESSIONS, context);
+
+        return router;
+
+    }
+
+    public List<String> getSessions() {
+        return sessions;
+    }
+
+    public String getSession(Instrument instrument) {
+        return assignments.getOrDefault(instrument, fallback);
+    }
+
+    /**
+     * @return True if any of the sessions is a standby, and the instruments may be fed by more than one session.
+     */
+    public boolean isRedundant() {
+        return !primaries.isEmpty();
+    }
+
+    /**
+     * @return Context of the session assigned to the instrument, or its standby if the primary is not running. Null
+     * if none of them are running.
+     */
+    public IContext getContext(Instrument instrument) {
+
+        String session = getSession(instrument);
+
+        IContext context = contexts.get(session);
+
+        if (context != null) {
+            return context;
+        }
+
+        for (Map.Entry<String, String> entry : primaries.entrySet()) {
+
+            if (!session.equals(entry.getValue())) {
+                continue;
+            }
+
+            context = contexts.get(entry.getKey());
+
+            if (context != null) {
+                return context; // Failover
+            }
+
+        }
+
+        return null;
+
+    }
+
+    /**
+     * @return Contexts of the running sessions, keyed and ordered by the session name.
+     */
+    public Map<String, IContext> getContexts() {
+
+        Map<String, IContext> map = new LinkedHashMap<>();
+
+        for (String session : sessions) {
+
+            IContext context = contexts.get(session);
+
+            if (context != null) {
+                map.put(session, context);
+            }
+
+        }
+
+        return map;
+
+    }
+
+    public void onStart(String session, IContext context) {
+
+        contexts.put(session, context);
+
+        logger.info("Session started : {}", session);
+
+    }
+
+    public void onStop(String session, IContext context) {
+
+        if (contexts.remove(session, context)) {
+            logger.info("Session stopped : {}", session);
+        }
+
+    }
+
+    /**
+     * Subscribe each of the running sessions to its share of the instruments, and unsubscribe the others.
+     *
+     * @param instruments Instruments to be subscribed across the sessions.
+     */
+    public void apply(Collection<Instrument> instruments) {
+
+        Map<String, Set<Instrument>> partitions = new HashMap<>();
+
+        for (Instrument instrument : instruments) {
+            partitions.computeIfAbsent(getSession(instrument), s -> new HashSet<>()).add(instrument);
+        }
+
+        getContexts().forEach((session, context) -> {
+
+            String primary = primaries.getOrDefault(session, session);
+
+            Set<Instrument> toBe = new HashSet<>(partitions.getOrDefault(primary, Set.of()));
+
+            Set<Instrument> asIs = context.getSubscribedInstruments();
+
+            context.unsubscribeInstruments(new HashSet<>(Sets.difference(asIs, toBe)));
+
+            context.setSubscribedInstruments(toBe);
+
+        });
+
+    }
+
+}
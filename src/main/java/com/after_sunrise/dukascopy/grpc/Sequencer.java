@@ -0,0 +1,105 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.Instrument;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Last ticks of each instrument, to drop the duplicate and out-of-order ticks fed by the redundant sessions.
+ *
+ * Ticks sharing the last millisecond are compared by their prices and sizes, so that the distinct ticks within a
+ * millisecond are accepted, while their copies from the other session are dropped.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Sequencer {
+
+    public static class Sequence {
+
+        private static final int FIELDS = 4;
+
+        private long time = Long.MIN_VALUE; // Guarded by this.
+
+        private double[] ticks = new double[FIELDS * 4]; // Accepted within the time, guarded by this.
+
+        private int count; // Guarded by this.
+
+        /**
+         * Advance to the tick. Caller is expected to hold the monitor of this sequence.
+         *
+         * @return False if the tick is before the last accepted one, or has already been accepted within the time.
+         */
+        public boolean advance(long time, double askPrice, double askSize, double bidPrice, double bidSize) {
+
+            if (time < this.time) {
+                return false;
+            }
+
+            if (time > this.time) {
+
+                this.time = time;
+
+                this.count = 0;
+
+            } else if (contains(askPrice, askSize, bidPrice, bidSize)) {
+
+                return false;
+
+            }
+
+            if (ticks.length < (count + 1) * FIELDS) {
+                ticks = Arrays.copyOf(ticks, ticks.length * 2);
+            }
+
+            int i = count++ * FIELDS;
+            ticks[i] = askPrice;
+            ticks[i + 1] = askSize;
+            ticks[i + 2] = bidPrice;
+            ticks[i + 3] = bidSize;
+
+            return true;
+
+        }
+
+        private boolean contains(double askPrice, double askSize, double bidPrice, double bidSize) {
+
+            for (int i = 0; i < count * FIELDS; i += FIELDS) {
+
+                if (Double.compare(ticks[i], askPrice) == 0 && Double.compare(ticks[i + 1], askSize) == 0
+                        && Double.compare(ticks[i + 2], bidPrice) == 0 && Double.compare(ticks[i + 3], bidSize) == 0) {
+                    return true;
+                }
+
+            }
+
+            return false;
+
+        }
+
+        /**
+         * @return True if the time is the last accepted one. Caller is expected to hold the monitor of this sequence.
+         */
+        public boolean isCurrent(long time) {
+            return this.time == time;
+        }
+
+    }
+
+    private final Map<Instrument, Sequence> sequences = new ConcurrentHashMap<>();
+
+    public Sequence of(Instrument instrument) {
+
+        Sequence sequence = sequences.get(instrument);
+
+        if (sequence == null) {
+            sequence = sequences.computeIfAbsent(instrument, i -> new Sequence());
+        }
+
+        return sequence;
+
+    }
+
+}
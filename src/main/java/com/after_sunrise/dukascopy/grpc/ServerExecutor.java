@@ -0,0 +1,85 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Strategy of the executor, on which the gRPC server runs the call handlers.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public enum ServerExecutor {
+
+    /**
+     * Share the scheduled executor, which also runs the reconnects and the timers.
+     */
+    SHARED,
+
+    /**
+     * Dedicated pool of the bounded number of threads.
+     */
+    POOL,
+
+    /**
+     * Run the handlers on the transport threads. Handlers must not block.
+     */
+    DIRECT,
+
+    /**
+     * Virtual thread per call, if supported by the runtime. Falls back to {@link #POOL} otherwise.
+     */
+    VIRTUAL;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServerExecutor.class);
+
+    /**
+     * Create the executor of this strategy.
+     *
+     * @param shared  Executor to be shared.
+     * @param factory Thread factory for the dedicated pool.
+     * @param threads Size of the dedicated pool.
+     * @return Executor, which is either the shared one, the direct one, or a new {@link ExecutorService} to be shutdown.
+     */
+    public Executor create(ScheduledExecutorService shared, ThreadFactory factory, int threads) {
+
+        switch (this) {
+
+            case SHARED:
+
+                return shared;
+
+            case DIRECT:
+
+                return MoreExecutors.directExecutor(); // Identified by gRPC to skip the call serialization.
+
+            case VIRTUAL:
+
+                try {
+
+                    return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+
+                } catch (ReflectiveOperationException e) {
+
+                    LOGGER.warn("Virtual threads are not supported. Falling back to {} : {}", POOL, e.toString());
+
+                }
+
+                // Fall through
+
+            default:
+
+                return Executors.newFixedThreadPool(Math.max(threads, 1), factory);
+
+        }
+
+    }
+
+}
@@ -1,34 +1,84 @@
 package com.after_sunrise.dukascopy.grpc;
 
+import com.after_sunrise.dukascopy.grpc.proto.DukascopyEndpointGrpc;
 import com.after_sunrise.dukascopy.grpc.proto.DukascopyEndpointGrpc.DukascopyEndpointImplBase;
 import com.dukascopy.api.IContext;
 import com.dukascopy.api.ITick;
 import com.dukascopy.api.Instrument;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Iterables;
+import com.google.protobuf.ByteString;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Clock;
 import java.util.Collections;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
-
+import java.util.function.Consumer;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_BATCH_SIZE;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_BATCH_WINDOW;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_COMPACT_SIZE_SCALE;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_BAR_GRACE;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_DEPTH_LEVELS;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_DOWNLOAD_THREADS;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_HISTORY_SIZE;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_REPLAY_THREADS;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_SUBSCRIPTION_DELAY;
 import static com.after_sunrise.dukascopy.grpc.Config.CK_VERSION;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_BATCH_SIZE;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_BATCH_WINDOW;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_COMPACT_SIZE_SCALE;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_BAR_GRACE;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_DEPTH_LEVELS;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_DOWNLOAD_THREADS;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_HISTORY_SIZE;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_REPLAY_THREADS;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_SUBSCRIPTION_DELAY;
 import static com.after_sunrise.dukascopy.grpc.Config.CV_VERSION;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.BarBatch;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.BarRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.BarResponse;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.CompactTick;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.DepthRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.DepthResponse;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.DownloadRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.HistoryRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.HistoryResponse;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.ManageRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.ReplayRequest;
 import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.StatusRequest;
 import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.StatusResponse;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickBatch;
 import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickRequest;
 import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
 /**
  * @author takanori.takase
@@ -40,18 +90,153 @@ public class Service extends DukascopyEndpointImplBase {
 
     private final Lock lock = new ReentrantLock();
 
+    private final Lock adjustLock = new ReentrantLock();
+
+    private final AtomicBoolean adjusting = new AtomicBoolean();
+
+    private final Map<Instrument, Integer> references = new HashMap<>(); // Guarded by the lock.
+
     private final Map<StreamObserver<TickResponse>, Set<Instrument>> listeners = new ConcurrentHashMap<>();
 
+    private final Map<Instrument, List<StreamObserver<TickResponse>>> subscribers = new ConcurrentHashMap<>();
+
+    private final Map<Long, List<Conflator>> throttles = new ConcurrentHashMap<>();
+
+    private final Map<Long, ScheduledFuture<?>> timers = new ConcurrentHashMap<>();
+
+    private final Map<StreamObserver<BarResponse>, List<Aggregator>> bars = new ConcurrentHashMap<>();
+
+    private final Map<Instrument, List<Aggregator>> aggregators = new ConcurrentHashMap<>();
+
+    private final Map<Long, List<Aggregator>> intervals = new ConcurrentHashMap<>();
+
+    private final Map<Long, ScheduledFuture<?>> barTimers = new ConcurrentHashMap<>();
+
+    private final Map<StreamObserver<DepthResponse>, List<Book>> depths = new ConcurrentHashMap<>();
+
+    private final Map<Instrument, Book> books = new ConcurrentHashMap<>();
+
+    private final Map<Instrument, ByteString> symbols = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<TickResponse.Builder> builders = ThreadLocal.withInitial(TickResponse::newBuilder); // One per dispatching thread.
+
     private final Clock clock;
 
     private final Properties properties;
 
-    private final IContext context;
+    private final ScheduledExecutorService executor;
+
+    private final Router router;
 
-    public Service(Clock clock, Properties properties, IContext context) {
+    private final Sequencer sequencer; // Null unless fed by the redundant sessions.
+
+    private final int batchSize;
+
+    private final long batchWindow;
+
+    private final int compactScale;
+
+    private final History history;
+
+    private final ScheduledExecutorService replays;
+
+    private final ExecutorService downloads;
+
+    private final Downloader downloader;
+
+    private final int depthLevels;
+
+    private final long barGrace;
+
+    private final Path journal;
+
+    private final long subscriptionDelay;
+
+    private Set<Instrument> applied; // Guarded by the adjust lock.
+
+    public Service(Clock clock, Properties properties, ScheduledExecutorService executor, IContext context) {
+        this(clock, properties, executor, Executors.defaultThreadFactory(),
+                Router.of(Objects.requireNonNull(context, "Context is required.")));
+    }
+
+    public Service(Clock clock, Properties properties, ScheduledExecutorService executor, ThreadFactory factory, Router router) {
         this.clock = Objects.requireNonNull(clock, "Clock is required.");
         this.properties = Objects.requireNonNull(properties, "Properties is required.");
-        this.context = Objects.requireNonNull(context, "Context is required.");
+        this.executor = Objects.requireNonNull(executor, "Executor is required.");
+        this.router = Objects.requireNonNull(router, "Router is required.");
+        this.sequencer = router.isRedundant() ? new Sequencer() : null;
+        this.batchSize = Integer.parseInt(properties.getProperty(CK_BATCH_SIZE, String.valueOf(CV_BATCH_SIZE)));
+        this.batchWindow = Long.parseLong(properties.getProperty(CK_BATCH_WINDOW, String.valueOf(CV_BATCH_WINDOW.toNanos() / 1000)));
+        this.compactScale = Integer.parseInt(properties.getProperty(CK_COMPACT_SIZE_SCALE, String.valueOf(CV_COMPACT_SIZE_SCALE)));
+        this.history = new History(Integer.parseInt(properties.getProperty(CK_HISTORY_SIZE, String.valueOf(CV_HISTORY_SIZE))));
+        this.replays = Executors.newScheduledThreadPool(Integer.parseInt(properties.getProperty(
+                CK_REPLAY_THREADS, String.valueOf(CV_REPLAY_THREADS))), factory); // Apart from the timers.
+        this.downloads = Executors.newFixedThreadPool(Integer.parseInt(properties.getProperty(
+                CK_DOWNLOAD_THREADS, String.valueOf(CV_DOWNLOAD_THREADS))), factory); // May block on the history.
+        this.downloader = new Downloader(clock, properties, router, downloads);
+        this.barGrace = Long.parseLong(properties.getProperty(CK_BAR_GRACE, String.valueOf(CV_BAR_GRACE)));
+        this.depthLevels = Integer.parseInt(properties.getProperty(CK_DEPTH_LEVELS, String.valueOf(CV_DEPTH_LEVELS)));
+        this.journal = Journal.resolveDirectory(properties);
+        this.subscriptionDelay = Long.parseLong(properties.getProperty(CK_SUBSCRIPTION_DELAY, String.valueOf(CV_SUBSCRIPTION_DELAY)));
+    }
+
+    public ServerServiceDefinition createServiceDefinition() {
+
+        ServerServiceDefinition definition = bindService();
+
+        ServiceDescriptor descriptor = definition.getServiceDescriptor();
+
+        ServiceDescriptor.Builder services = ServiceDescriptor.newBuilder(descriptor.getName())
+                .setSchemaDescriptor(descriptor.getSchemaDescriptor());
+
+        List<ServerMethodDefinition<?, ?>> methods = new ArrayList<>();
+
+        TickMarshaller marshaller = new TickMarshaller(); // Shared, as both streams receive the same instances.
+
+        for (ServerMethodDefinition<?, ?> method : definition.getMethods()) {
+
+            if (DukascopyEndpointGrpc.getSubscribeMethod() == method.getMethodDescriptor()) {
+
+                @SuppressWarnings("unchecked")
+                ServerMethodDefinition<TickRequest, TickResponse> m = (ServerMethodDefinition<TickRequest, TickResponse>) method;
+
+                method = withMarshaller(m, marshaller); // Encode once and share the payload across the subscribers.
+
+            }
+
+            if (DukascopyEndpointGrpc.getManageMethod() == method.getMethodDescriptor()) {
+
+                @SuppressWarnings("unchecked")
+                ServerMethodDefinition<ManageRequest, TickResponse> m = (ServerMethodDefinition<ManageRequest, TickResponse>) method;
+
+                method = withMarshaller(m, marshaller);
+
+            }
+
+            services.addMethod(method.getMethodDescriptor());
+
+            methods.add(method);
+
+        }
+
+        ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(services.build());
+
+        methods.forEach(builder::addMethod);
+
+        return builder.build();
+
+    }
+
+    private static <Q> ServerMethodDefinition<Q, TickResponse> withMarshaller(
+            ServerMethodDefinition<Q, TickResponse> method, TickMarshaller marshaller) {
+
+        MethodDescriptor<Q, TickResponse> md = method.getMethodDescriptor();
+
+        return ServerMethodDefinition.create(
+                md.toBuilder(md.getRequestMarshaller(), marshaller).build(),
+                method.getServerCallHandler()
+        );
+
     }
 
     @Override
@@ -63,13 +248,35 @@ public class Service extends DukascopyEndpointImplBase {
 
         builder.setSystemTime(clock.millis());
 
-        builder.setServerTime(context.getTime());
+        Map<String, IContext> contexts = router.getContexts();
+
+        Set<String> accounts = new LinkedHashSet<>();
+
+        Set<Instrument> instruments = new LinkedHashSet<>();
 
-        builder.setConnected(context.getAccount().isConnected());
+        boolean connected = contexts.size() == router.getSessions().size(); // Degraded if any session is down.
 
-        builder.setAccount(context.getAccount().getAccountId());
+        long time = 0;
 
-        context.getSubscribedInstruments().forEach(i -> builder.addSymbols(i.name()));
+        for (IContext context : contexts.values()) {
+
+            time = Math.max(time, context.getTime());
+
+            connected &= context.getAccount().isConnected();
+
+            accounts.add(context.getAccount().getAccountId());
+
+            instruments.addAll(context.getSubscribedInstruments());
+
+        }
+
+        builder.setServerTime(time);
+
+        builder.setConnected(connected);
+
+        builder.setAccount(String.join(",", accounts));
+
+        instruments.forEach(i -> builder.addSymbols(i.name()));
 
         observer.onNext(builder.build());
 
@@ -78,11 +285,11 @@ public class Service extends DukascopyEndpointImplBase {
     }
 
     @Override
-    public void subscribe(TickRequest request, StreamObserver<TickResponse> observer) {
+    public void history(HistoryRequest request, StreamObserver<HistoryResponse> observer) {
 
-        Set<Instrument> instruments = new HashSet<>();
+        HistoryResponse.Builder builder = HistoryResponse.newBuilder();
 
-        for (String symbol : new HashSet<>(request.getSymbolsList())) {
+        for (String symbol : new LinkedHashSet<>(request.getSymbolsList())) {
 
             Instrument i = Instrument.valueOf(symbol);
 
@@ -90,139 +297,1340 @@ public class Service extends DukascopyEndpointImplBase {
 
                 observer.onError(new IOException("Unknown symbol : " + symbol));
 
-                return; // Reject registration.
+                return;
 
             }
 
-            instruments.add(i);
+            builder.addAllTicks(history.getTicks(i, request.getCount()));
 
         }
 
-        if (instruments.isEmpty()) {
+        observer.onNext(builder.build());
 
-            observer.onCompleted();
+        observer.onCompleted();
 
-            return; // Complete immediately.
+    }
+
+    @Override
+    public void subscribe(TickRequest request, StreamObserver<TickResponse> observer) {
+
+        subscribe(request, observer, observer);
+
+    }
 
+    /**
+     * Long-lived stream whose instruments are added and removed in place by the client, without tearing down the
+     * stream. Ticks of the instruments which are kept across the requests are delivered without interruption.
+     */
+    @Override
+    public StreamObserver<ManageRequest> manage(StreamObserver<TickResponse> observer) {
+
+        Conflator listener = new Conflator(observer, null, 0);
+
+        if (observer instanceof ServerCallStreamObserver) {
+            ((ServerCallStreamObserver<?>) observer).setOnCancelHandler(() -> cancel(listener));
         }
 
-        logger.info("Registering listener : {} ({} symbols)", observer, instruments.size());
+        logger.info("Registering managed listener : {}", observer);
 
-        listeners.put(observer, Collections.unmodifiableSet(instruments));
+        register(listener, Set.of());
 
-        adjustSubscriptions();
+        return new StreamObserver<>() {
+            @Override
+            public void onNext(ManageRequest request) {
+                manage(request, listener);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                cancel(listener);
+            }
+
+            @Override
+            public void onCompleted() {
+
+                if (unregister(listener) == null) {
+                    return; // Already terminated.
+                }
+
+                adjustSubscriptions();
+
+                synchronized (listener) {
+                    listener.onCompleted();
+                }
+
+            }
+        };
 
     }
 
-    public void onTick(Instrument instrument, ITick tick) {
+    private void manage(ManageRequest request, StreamObserver<TickResponse> listener) {
 
-        if (instrument == null || tick == null) {
-            return;
-        }
+        Set<Instrument> additions = new HashSet<>();
 
-        TickResponse response = TickResponse.newBuilder()
-                .setSymbol(instrument.name())
-                .setTime(tick.getTime())
-                .setAskPrice(tick.getAsk())
-                .setAskSize(tick.getAskVolume())
-                .setBidPrice(tick.getBid())
-                .setBidSize(tick.getBidVolume())
-                .build();
+        Set<Instrument> removals = new HashSet<>();
 
-        int errors = 0;
+        for (String symbol : Iterables.concat(request.getAddList(), request.getRemoveList())) {
+
+            Instrument i = Instrument.valueOf(symbol);
+
+            if (i == null) {
+
+                if (unregister(listener) != null) {
+
+                    adjustSubscriptions();
+
+                    synchronized (listener) {
+                        listener.onError(new IOException("Unknown symbol : " + symbol));
+                    }
 
-        for (Entry<StreamObserver<TickResponse>, Set<Instrument>> entry : listeners.entrySet()) {
+                }
+
+                return; // Reject the stream.
 
-            if (!entry.getValue().contains(instrument)) {
-                continue;
             }
 
-            StreamObserver<TickResponse> observer = entry.getKey();
+        }
+
+        request.getAddList().forEach(symbol -> additions.add(Instrument.valueOf(symbol)));
+
+        request.getRemoveList().forEach(symbol -> removals.add(Instrument.valueOf(symbol)));
+
+        synchronized (listener) { // Hold the fan-out until the snapshot is sent.
+
+            Set<Instrument> added = update(listener, additions, removals);
+
+            if (added == null) {
+                return; // Already terminated.
+            }
 
             try {
 
-                observer.onNext(response);
+                for (Instrument instrument : added) {
+
+                    TickResponse latest = history.getLatest(instrument);
+
+                    if (latest != null) {
+                        listener.onNext(latest);
+                    }
+
+                }
 
             } catch (RuntimeException e) {
 
-                errors++; // Trigger adjustment regardless of the listener removal result.
+                terminate(listener, e);
 
-                Set<Instrument> removed = listeners.remove(observer);
+            }
 
-                if (removed == null) {
-                    continue;
-                }
+        }
 
-                try {
+        adjustSubscriptions();
 
-                    logger.info("Terminating listener : {} - {} - {}", instrument.name(), observer, e.toString());
+    }
 
-                    observer.onError(e);
+    /**
+     * Apply the delta to the instruments of the registered listener. Removals take precedence over additions.
+     *
+     * @return Instruments newly added, or null if the listener is not registered.
+     */
+    private Set<Instrument> update(StreamObserver<TickResponse> observer, Set<Instrument> additions, Set<Instrument> removals) {
 
-                } catch (RuntimeException x) {
-                    // Ignore. Expected to fail if the client has already disconnected.
+        lock.lock();
+
+        try {
+
+            Set<Instrument> current = listeners.get(observer);
+
+            if (current == null) {
+                return null;
+            }
+
+            Set<Instrument> instruments = new HashSet<>(current);
+
+            Set<Instrument> added = new HashSet<>();
+
+            for (Instrument instrument : additions) {
+
+                if (!removals.contains(instrument) && instruments.add(instrument)) {
+                    append(subscribers, instrument, observer);
+                    retain(instrument);
+                    Metrics.of(instrument).onListeners(subscribers.get(instrument).size());
+                    added.add(instrument);
                 }
 
             }
 
-        }
+            for (Instrument instrument : removals) {
 
-        if (errors > 0) {
+                if (instruments.remove(instrument)) {
+                    delete(subscribers, instrument, observer);
+                    release(instrument);
+                    Metrics.of(instrument).onListeners(subscribers.getOrDefault(instrument, List.of()).size());
+                }
 
-            logger.debug("Adjusting subscription : {} ({} errors).", instrument.name(), errors);
+            }
 
-            adjustSubscriptions();
+            listeners.put(observer, Collections.unmodifiableSet(instruments));
+
+            logger.info("Updated managed listener : {} (+{}/-{}, {} symbols)",
+                    observer, added.size(), current.size() + added.size() - instruments.size(), instruments.size());
+
+            return added;
+
+        } finally {
+
+            lock.unlock();
 
         }
 
     }
 
-    public void onShutdown() {
+    @Override
+    public void subscribeBatch(TickRequest request, StreamObserver<TickBatch> observer) {
 
-        listeners.keySet().forEach(observer -> {
+        subscribe(request, observer, new Batcher(observer, executor, batchSize, batchWindow));
 
-            Set<Instrument> removed = listeners.remove(observer);
+    }
 
-            if (removed == null) {
-                return;
-            }
+    @Override
+    public void subscribeCompact(TickRequest request, StreamObserver<CompactTick> observer) {
 
-            try {
+        subscribe(request, observer, new CompactEncoder(observer, compactScale));
 
-                logger.info("Completing listener : {} ({} symbols)", observer, removed.size());
+    }
 
-                observer.onCompleted();
+    @Override
+    public void subscribeBars(BarRequest request, StreamObserver<BarResponse> observer) {
+
+        long interval = request.getIntervalMillis();
+
+        if (interval <= 0) {
+
+            observer.onError(new IOException("Invalid interval : " + interval));
+
+            return; // Reject registration.
+
+        }
+
+        Set<Instrument> instruments = new HashSet<>();
+
+        for (String symbol : new HashSet<>(request.getSymbolsList())) {
+
+            Instrument i = Instrument.valueOf(symbol);
+
+            if (i == null) {
+
+                observer.onError(new IOException("Unknown symbol : " + symbol));
+
+                return; // Reject registration.
 
-            } catch (RuntimeException x) {
-                // Ignore. Expected to fail if the client has already disconnected.
             }
 
-        });
+            instruments.add(i);
+
+        }
+
+        if (instruments.isEmpty()) {
+
+            observer.onCompleted();
+
+            return; // Complete immediately.
+
+        }
+
+        if (observer instanceof ServerCallStreamObserver) {
+            ((ServerCallStreamObserver<?>) observer).setOnCancelHandler(() -> {
+                if (unregisterBars(observer) != null) {
+                    logger.info("Cancelled bar listener : {}", observer);
+                    adjustSubscriptions();
+                }
+            });
+        }
+
+        logger.info("Registering bar listener : {} ({} symbols, interval={})", observer, instruments.size(), interval);
+
+        registerBars(observer, instruments, interval);
 
         adjustSubscriptions();
 
     }
 
-    @VisibleForTesting
-    void adjustSubscriptions() {
+    @Override
+    public void subscribeDepth(DepthRequest request, StreamObserver<DepthResponse> observer) {
 
-        lock.lock();
+        if (depthLevels <= 0) {
 
-        try {
+            observer.onError(new IOException("Depth is not enabled."));
+
+            return; // Reject registration.
+
+        }
 
-            Set<Instrument> toBe = new HashSet<>();
+        Set<Instrument> instruments = new HashSet<>();
 
-            listeners.values().forEach(toBe::addAll);
+        for (String symbol : new HashSet<>(request.getSymbolsList())) {
 
-            Set<Instrument> asIs = context.getSubscribedInstruments();
+            Instrument i = Instrument.valueOf(symbol);
 
-            context.unsubscribeInstruments(new HashSet<>(Sets.difference(asIs, toBe)));
+            if (i == null) {
 
-            context.setSubscribedInstruments(toBe);
+                observer.onError(new IOException("Unknown symbol : " + symbol));
 
-        } finally {
+                return; // Reject registration.
 
-            lock.unlock();
+            }
+
+            instruments.add(i);
+
+        }
+
+        if (instruments.isEmpty()) {
+
+            observer.onCompleted();
+
+            return; // Complete immediately.
+
+        }
+
+        if (observer instanceof ServerCallStreamObserver) {
+            ((ServerCallStreamObserver<?>) observer).setOnCancelHandler(() -> {
+                if (unregisterDepth(observer) != null) {
+                    logger.info("Cancelled depth listener : {}", observer);
+                    adjustSubscriptions();
+                }
+            });
+        }
+
+        logger.info("Registering depth listener : {} ({} symbols)", observer, instruments.size());
+
+        registerDepth(observer, instruments);
+
+        adjustSubscriptions();
+
+    }
+
+    @Override
+    public void replay(ReplayRequest request, StreamObserver<TickResponse> observer) {
+
+        if (journal == null) {
+
+            observer.onError(new IOException("Journal is not configured."));
+
+            return;
+
+        }
+
+        Set<Instrument> instruments = new LinkedHashSet<>();
+
+        for (String symbol : new LinkedHashSet<>(request.getSymbolsList())) {
+
+            Instrument i = Instrument.valueOf(symbol);
+
+            if (i == null) {
+
+                observer.onError(new IOException("Unknown symbol : " + symbol));
+
+                return;
+
+            }
+
+            instruments.add(i);
+
+        }
+
+        if (instruments.isEmpty()) {
+
+            observer.onCompleted();
+
+            return; // Complete immediately.
+
+        }
+
+        Replayer replayer = new Replayer(clock, replays, observer, instruments,
+                request.getStartTime(), request.getEndTime(), request.getSpeed());
+
+        replayer.start(journal); // Segments are listed on the replay executor.
+
+    }
+
+    @Override
+    public void getTicks(DownloadRequest request, StreamObserver<TickBatch> observer) {
+        downloader.getTicks(request, observer);
+    }
+
+    @Override
+    public void getBars(DownloadRequest request, StreamObserver<BarBatch> observer) {
+        downloader.getBars(request, observer);
+    }
+
+    private void subscribe(TickRequest request, StreamObserver<?> observer, StreamObserver<TickResponse> adapter) {
+
+        Set<Instrument> instruments = new HashSet<>();
+
+        for (String symbol : new HashSet<>(request.getSymbolsList())) {
+
+            Instrument i = Instrument.valueOf(symbol);
+
+            if (i == null) {
+
+                observer.onError(new IOException("Unknown symbol : " + symbol));
+
+                return; // Reject registration.
+
+            }
+
+            instruments.add(i);
+
+        }
+
+        if (instruments.isEmpty()) {
+
+            observer.onCompleted();
+
+            return; // Complete immediately.
+
+        }
+
+        ServerCallStreamObserver<?> call = observer instanceof ServerCallStreamObserver
+                ? (ServerCallStreamObserver<?>) observer : null;
+
+        long interval = Math.max(request.getMinIntervalMillis(), 0);
+
+        Conflator listener = new Conflator(adapter, request.getConflate() ? call : null, interval);
+
+        Consumer<RuntimeException> failure = e -> fail(listener, e);
+
+        listener.setOnFailureHandler(failure); // Ready handler
+
+        if (adapter instanceof Batcher) {
+            ((Batcher) adapter).setOnFailureHandler(failure); // Timer flush
+        }
+
+        if (call != null) {
+            call.setOnCancelHandler(() -> cancel(listener));
+        }
+
+        logger.info("Registering listener : {} ({} symbols, conflate={}, interval={})",
+                observer, instruments.size(), request.getConflate(), interval);
+
+        synchronized (listener) { // Hold the fan-out until the snapshot is sent.
+
+            register(listener, Collections.unmodifiableSet(instruments));
+
+            try {
+
+                for (Instrument instrument : instruments) {
+
+                    TickResponse latest = history.getLatest(instrument);
+
+                    if (latest != null) {
+                        listener.onNext(latest); // May repeat the latest tick, if dispatched concurrently.
+                    }
+
+                }
+
+            } catch (RuntimeException e) {
+
+                terminate(listener, e);
+
+            }
+
+        }
+
+        adjustSubscriptions();
+
+    }
+
+    private void cancel(StreamObserver<TickResponse> observer) {
+
+        Set<Instrument> removed = unregister(observer);
+
+        if (removed == null) {
+            return;
+        }
+
+        logger.info("Cancelled listener : {} ({} symbols)", observer, removed.size());
+
+        adjustSubscriptions();
+
+    }
+
+    public void onTick(Instrument instrument, ITick tick) {
+
+        if (instrument == null || tick == null) {
+            return;
+        }
+
+        onTick(instrument, tick.getTime(), tick.getAsk(), tick.getAskVolume(), tick.getBid(), tick.getBidVolume());
+
+    }
+
+    /**
+     * Distribute the tick to the listeners of the instrument.
+     *
+     * @return False if the tick has been dropped as a duplicate, in which case its depth should not be applied either.
+     */
+    public boolean onTick(Instrument instrument, long time, double askPrice, double askSize, double bidPrice, double bidSize) {
+
+        if (instrument == null) {
+            return false;
+        }
+
+        if (sequencer == null) {
+
+            process(instrument, time, askPrice, askSize, bidPrice, bidSize);
+
+            return true;
+
+        }
+
+        Sequencer.Sequence sequence = sequencer.of(instrument);
+
+        synchronized (sequence) { // Keep the streams in order across the dispatching threads.
+
+            if (!sequence.advance(time, askPrice, askSize, bidPrice, bidSize)) {
+
+                Metrics.of(instrument).onDropped(); // Already received from the other session.
+
+                return false;
+
+            }
+
+            process(instrument, time, askPrice, askSize, bidPrice, bidSize);
+
+            return true;
+
+        }
+
+    }
+
+    private void process(Instrument instrument, long time, double askPrice, double askSize, double bidPrice, double bidSize) {
+
+        history.onTick(instrument, time, askPrice, askSize, bidPrice, bidSize);
+
+        List<Aggregator> aggregations = aggregators.get(instrument);
+
+        if (aggregations != null) {
+
+            for (int i = 0; i < aggregations.size(); i++) {
+
+                Aggregator aggregator = aggregations.get(i);
+
+                publish(aggregator, aggregator.onTick(time, askPrice, askSize, bidPrice, bidSize));
+
+            }
+
+        }
+
+        List<StreamObserver<TickResponse>> observers = subscribers.get(instrument);
+
+        if (observers == null) {
+            return; // No subscribers for the instrument.
+        }
+
+        ByteString symbol = symbols.get(instrument);
+
+        if (symbol == null) {
+            symbol = symbols.computeIfAbsent(instrument, i -> ByteString.copyFromUtf8(i.name()));
+        }
+
+        TickResponse response = builders.get()
+                .setSymbolBytes(symbol) // Encoded once per instrument.
+                .setTime(time)
+                .setAskPrice(askPrice)
+                .setAskSize(askSize)
+                .setBidPrice(bidPrice)
+                .setBidSize(bidSize)
+                .build();
+
+        Metrics metrics = Metrics.of(instrument);
+
+        long start = System.nanoTime();
+
+        int errors = 0;
+
+        for (int i = 0; i < observers.size(); i++) {
+
+            StreamObserver<TickResponse> observer = observers.get(i);
+
+            try {
+
+                observer.onNext(response); // Serialized by the conflator, which wraps every tick stream.
+
+            } catch (RuntimeException e) {
+
+                errors++; // Trigger adjustment regardless of the listener removal result.
+
+                metrics.onFailure();
+
+                terminate(observer, e);
+
+            }
+
+        }
+
+        metrics.onSent(observers.size() - errors, System.nanoTime() - start, clock.millis() - time);
+
+        if (errors > 0) {
+
+            logger.debug("Adjusting subscription : {} ({} errors).", instrument.name(), errors);
+
+            adjustSubscriptions();
+
+        }
+
+    }
+
+    private void flush(long interval) {
+
+        List<Conflator> conflators = throttles.getOrDefault(interval, List.of());
+
+        int errors = 0;
+
+        for (int i = 0; i < conflators.size(); i++) {
+
+            Conflator conflator = conflators.get(i);
+
+            try {
+
+                conflator.run();
+
+            } catch (RuntimeException e) {
+
+                errors++;
+
+                terminate(conflator, e);
+
+            }
+
+        }
+
+        if (errors > 0) {
+
+            logger.debug("Adjusting subscription : {} ms ({} errors).", interval, errors);
+
+            adjustSubscriptions();
+
+        }
+
+    }
+
+    /**
+     * @return True if the instrument has any depth listeners, so that the caller can skip copying the levels otherwise.
+     */
+    public boolean hasDepth(Instrument instrument) {
+        return books.containsKey(instrument);
+    }
+
+    /**
+     * Apply the levels of the tick to the book of the instrument, and send the level changes to the depth listeners.
+     * Expected to be called after {@link #onTick(Instrument, long, double, double, double, double)} of the same tick,
+     * only if the tick has been accepted, since a copy of an earlier tick within the same millisecond would roll back
+     * the book to the older levels.
+     */
+    public void onDepth(Instrument instrument, long time, Depth depth) {
+
+        if (instrument == null || depth == null) {
+            return;
+        }
+
+        Book book = books.get(instrument);
+
+        if (book == null) {
+            return; // No depth listeners for the instrument.
+        }
+
+        if (sequencer == null) {
+
+            publish(book, time, depth);
+
+            return;
+
+        }
+
+        Sequencer.Sequence sequence = sequencer.of(instrument);
+
+        synchronized (sequence) {
+
+            if (sequence.isCurrent(time)) {
+                publish(book, time, depth); // Ticks of the earlier milliseconds are no longer current.
+            }
+
+        }
+
+    }
+
+    private void publish(Book book, long time, Depth depth) {
+
+        int errors = 0;
+
+        DepthResponse changes = book.onDepth(time, depth);
+
+        if (changes != null) {
+            errors += send(book.getObservers(), changes);
+        }
+
+        List<StreamObserver<DepthResponse>> pending = book.getPending();
+
+        if (!pending.isEmpty()) {
+
+            errors += send(pending, book.getSnapshot()); // Snapshot before the changes.
+
+            lock.lock();
+
+            try {
+
+                List<StreamObserver<DepthResponse>> observers = new ArrayList<>(book.getObservers());
+
+                List<StreamObserver<DepthResponse>> remaining = new ArrayList<>(book.getPending());
+
+                for (StreamObserver<DepthResponse> observer : pending) {
+
+                    if (remaining.remove(observer) && depths.containsKey(observer)) {
+                        observers.add(observer);
+                    }
+
+                }
+
+                book.setObservers(observers);
+
+                book.setPending(remaining);
+
+            } finally {
+
+                lock.unlock();
+
+            }
+
+        }
+
+        if (errors > 0) {
+
+            logger.debug("Adjusting subscription : {} depth ({} errors).", book.getInstrument().name(), errors);
+
+            adjustSubscriptions();
+
+        }
+
+    }
+
+    private int send(List<StreamObserver<DepthResponse>> observers, DepthResponse value) {
+
+        int errors = 0;
+
+        for (int i = 0; i < observers.size(); i++) {
+
+            StreamObserver<DepthResponse> observer = observers.get(i);
+
+            try {
+
+                synchronized (observer) { // Instruments of a stream may be dispatched by different threads.
+                    observer.onNext(value);
+                }
+
+            } catch (RuntimeException e) {
+
+                errors++;
+
+                if (unregisterDepth(observer) == null) {
+                    continue;
+                }
+
+                try {
+
+                    logger.info("Terminating depth listener : {} - {}", observer, e.toString());
+
+                    observer.onError(e);
+
+                } catch (RuntimeException x) {
+                    // Ignore. Expected to fail if the client has already disconnected.
+                }
+
+            }
+
+        }
+
+        return errors;
+
+    }
+
+    private void flushBars(long interval) {
+
+        List<Aggregator> aggregations = intervals.getOrDefault(interval, List.of());
+
+        long now = clock.millis();
+
+        for (int i = 0; i < aggregations.size(); i++) {
+
+            Aggregator aggregator = aggregations.get(i);
+
+            publish(aggregator, aggregator.onTimer(now));
+
+        }
+
+    }
+
+    private void publish(Aggregator aggregator, BarResponse bar) {
+
+        if (bar == null) {
+            return;
+        }
+
+        List<StreamObserver<BarResponse>> observers = aggregator.getObservers();
+
+        int errors = 0;
+
+        for (int i = 0; i < observers.size(); i++) {
+
+            StreamObserver<BarResponse> observer = observers.get(i);
+
+            try {
+
+                synchronized (observer) { // Published by the dispatching threads and the timer.
+                    observer.onNext(bar);
+                }
+
+            } catch (RuntimeException e) {
+
+                errors++;
+
+                if (unregisterBars(observer) == null) {
+                    continue;
+                }
+
+                try {
+
+                    logger.info("Terminating bar listener : {} - {}", observer, e.toString());
+
+                    observer.onError(e);
+
+                } catch (RuntimeException x) {
+                    // Ignore. Expected to fail if the client has already disconnected.
+                }
+
+            }
+
+        }
+
+        if (errors > 0) {
+
+            logger.debug("Adjusting subscription : {} bars ({} errors).", aggregator.getInstrument().name(), errors);
+
+            adjustSubscriptions();
+
+        }
+
+    }
+
+    /**
+     * Terminate the stream which failed outside of the dispatch, such as by the timers and the ready handlers.
+     */
+    private void fail(StreamObserver<TickResponse> observer, RuntimeException e) {
+
+        terminate(observer, e);
+
+        adjustSubscriptions();
+
+    }
+
+    private void terminate(StreamObserver<TickResponse> observer, RuntimeException e) {
+
+        Set<Instrument> removed = unregister(observer);
+
+        if (removed == null) {
+            return;
+        }
+
+        try {
+
+            logger.info("Terminating listener : {} ({} symbols) - {}", observer, removed.size(), e.toString());
+
+            observer.onError(e);
+
+        } catch (RuntimeException x) {
+            // Ignore. Expected to fail if the client has already disconnected.
+        }
+
+    }
+
+    /**
+     * Notify the subscribers of the instruments which are no longer fed by any of the sessions, by resending the
+     * latest tick marked as stale. The streams are kept open, and resume with the next tick once a session restarts.
+     */
+    public void markStale() {
+
+        int errors = 0;
+
+        for (Map.Entry<Instrument, List<StreamObserver<TickResponse>>> entry : subscribers.entrySet()) {
+
+            Instrument instrument = entry.getKey();
+
+            if (router.getContext(instrument) != null) {
+                continue; // Still fed by a running session.
+            }
+
+            TickResponse latest = history.getLatest(instrument);
+
+            TickResponse marker = (latest != null ? latest.toBuilder()
+                    : TickResponse.newBuilder().setSymbol(instrument.name())).setStale(true).build();
+
+            for (StreamObserver<TickResponse> observer : entry.getValue()) {
+
+                try {
+
+                    observer.onNext(marker); // Serialized by the conflator.
+
+                } catch (RuntimeException e) {
+
+                    errors++;
+
+                    terminate(observer, e);
+
+                }
+
+            }
+
+            logger.info("Marked stale : {} ({} listeners)", instrument.name(), entry.getValue().size());
+
+        }
+
+        if (errors > 0) {
+            adjustSubscriptions();
+        }
+
+    }
+
+    public void onShutdown() {
+
+        listeners.keySet().forEach(observer -> {
+
+            Set<Instrument> removed = unregister(observer);
+
+            if (removed == null) {
+                return;
+            }
+
+            try {
+
+                logger.info("Completing listener : {} ({} symbols)", observer, removed.size());
+
+                observer.onCompleted();
+
+            } catch (RuntimeException x) {
+                // Ignore. Expected to fail if the client has already disconnected.
+            }
+
+        });
+
+        bars.keySet().forEach(observer -> {
+
+            if (unregisterBars(observer) == null) {
+                return;
+            }
+
+            try {
+
+                logger.info("Completing bar listener : {}", observer);
+
+                observer.onCompleted();
+
+            } catch (RuntimeException x) {
+                // Ignore. Expected to fail if the client has already disconnected.
+            }
+
+        });
+
+        depths.keySet().forEach(observer -> {
+
+            if (unregisterDepth(observer) == null) {
+                return;
+            }
+
+            try {
+
+                logger.info("Completing depth listener : {}", observer);
+
+                observer.onCompleted();
+
+            } catch (RuntimeException x) {
+                // Ignore. Expected to fail if the client has already disconnected.
+            }
+
+        });
+
+        applySubscriptions();
+
+        replays.shutdownNow();
+
+        downloads.shutdownNow();
+
+    }
+
+    private void register(Conflator observer, Set<Instrument> instruments) { // Serializes the fan-out without a lock.
+
+        lock.lock();
+
+        try {
+
+            listeners.put(observer, instruments);
+
+            for (Instrument instrument : instruments) {
+                append(subscribers, instrument, observer);
+                retain(instrument);
+                Metrics.of(instrument).onListeners(subscribers.get(instrument).size());
+            }
+
+            if (observer.getInterval() > 0) {
+
+                long interval = observer.getInterval();
+
+                append(throttles, interval, observer);
+
+                timers.computeIfAbsent(interval, i -> executor.scheduleAtFixedRate(() -> flush(i), i, i, MILLISECONDS));
+
+            }
+
+        } finally {
+
+            lock.unlock();
+
+        }
+
+    }
+
+    private Set<Instrument> unregister(StreamObserver<TickResponse> observer) {
+
+        lock.lock();
+
+        try {
+
+            Set<Instrument> instruments = listeners.remove(observer);
+
+            if (instruments == null) {
+                return null; // Already removed.
+            }
+
+            for (Instrument instrument : instruments) {
+                delete(subscribers, instrument, observer);
+                release(instrument);
+                Metrics.of(instrument).onListeners(subscribers.getOrDefault(instrument, List.of()).size());
+            }
+
+            if (observer instanceof Conflator && ((Conflator) observer).getInterval() > 0) {
+
+                long interval = ((Conflator) observer).getInterval();
+
+                if (delete(throttles, interval, (Conflator) observer)) {
+                    Optional.ofNullable(timers.remove(interval)).ifPresent(f -> f.cancel(false));
+                }
+
+            }
+
+            return instruments;
+
+        } finally {
+
+            lock.unlock();
+
+        }
+
+    }
+
+    private void registerBars(StreamObserver<BarResponse> observer, Set<Instrument> instruments, long interval) {
+
+        lock.lock();
+
+        try {
+
+            List<Aggregator> aggregations = new ArrayList<>(instruments.size());
+
+            for (Instrument instrument : instruments) {
+
+                Aggregator aggregator = aggregators.getOrDefault(instrument, List.of()).stream()
+                        .filter(a -> a.getInterval() == interval).findAny().orElse(null);
+
+                if (aggregator == null) {
+
+                    aggregator = new Aggregator(instrument, interval, barGrace);
+
+                    append(aggregators, instrument, aggregator);
+
+                    append(intervals, interval, aggregator);
+
+                }
+
+                List<StreamObserver<BarResponse>> observers = new ArrayList<>(aggregator.getObservers());
+
+                observers.add(observer);
+
+                aggregator.setObservers(observers);
+
+                aggregations.add(aggregator);
+
+                retain(instrument);
+
+            }
+
+            bars.put(observer, List.copyOf(aggregations));
+
+            barTimers.computeIfAbsent(interval, i -> executor.scheduleAtFixedRate(
+                    () -> flushBars(i), i - Math.floorMod(clock.millis(), i) + barGrace, i, MILLISECONDS));
+
+        } finally {
+
+            lock.unlock();
+
+        }
+
+    }
+
+    private List<Aggregator> unregisterBars(StreamObserver<BarResponse> observer) {
+
+        lock.lock();
+
+        try {
+
+            List<Aggregator> aggregations = bars.remove(observer);
+
+            if (aggregations == null) {
+                return null; // Already removed.
+            }
+
+            for (Aggregator aggregator : aggregations) {
+
+                release(aggregator.getInstrument());
+
+                List<StreamObserver<BarResponse>> observers = new ArrayList<>(aggregator.getObservers());
+
+                observers.remove(observer);
+
+                aggregator.setObservers(observers);
+
+                if (!observers.isEmpty()) {
+                    continue;
+                }
+
+                delete(aggregators, aggregator.getInstrument(), aggregator);
+
+                if (delete(intervals, aggregator.getInterval(), aggregator)) {
+                    Optional.ofNullable(barTimers.remove(aggregator.getInterval())).ifPresent(f -> f.cancel(false));
+                }
+
+            }
+
+            return aggregations;
+
+        } finally {
+
+            lock.unlock();
+
+        }
+
+    }
+
+    private void registerDepth(StreamObserver<DepthResponse> observer, Set<Instrument> instruments) {
+
+        lock.lock();
+
+        try {
+
+            List<Book> list = new ArrayList<>(instruments.size());
+
+            for (Instrument instrument : instruments) {
+
+                Book book = books.computeIfAbsent(instrument, i -> new Book(i, depthLevels));
+
+                List<StreamObserver<DepthResponse>> pending = new ArrayList<>(book.getPending());
+
+                pending.add(observer);
+
+                book.setPending(pending); // Promoted with the snapshot on the next tick.
+
+                list.add(book);
+
+                retain(instrument);
+
+            }
+
+            depths.put(observer, List.copyOf(list));
+
+        } finally {
+
+            lock.unlock();
+
+        }
+
+    }
+
+    private List<Book> unregisterDepth(StreamObserver<DepthResponse> observer) {
+
+        lock.lock();
+
+        try {
+
+            List<Book> list = depths.remove(observer);
+
+            if (list == null) {
+                return null; // Already removed.
+            }
+
+            for (Book book : list) {
+
+                release(book.getInstrument());
+
+                List<StreamObserver<DepthResponse>> observers = new ArrayList<>(book.getObservers());
+
+                List<StreamObserver<DepthResponse>> pending = new ArrayList<>(book.getPending());
+
+                observers.remove(observer);
+
+                pending.remove(observer);
+
+                book.setObservers(observers);
+
+                book.setPending(pending);
+
+                if (observers.isEmpty() && pending.isEmpty()) {
+                    books.remove(book.getInstrument(), book);
+                }
+
+            }
+
+            return list;
+
+        } finally {
+
+            lock.unlock();
+
+        }
+
+    }
+
+    private void retain(Instrument instrument) {
+        references.merge(instrument, 1, Integer::sum);
+    }
+
+    private void release(Instrument instrument) {
+        references.computeIfPresent(instrument, (k, v) -> v > 1 ? v - 1 : null);
+    }
+
+    private static <K, V> void append(Map<K, List<V>> index, K key, V value) {
+
+        List<V> values = new ArrayList<>(index.getOrDefault(key, List.of()));
+
+        values.add(value);
+
+        index.put(key, List.copyOf(values)); // Copy-on-write
+
+    }
+
+    private static <K, V> boolean delete(Map<K, List<V>> index, K key, V value) {
+
+        List<V> values = new ArrayList<>(index.getOrDefault(key, List.of()));
+
+        values.remove(value);
+
+        if (values.isEmpty()) {
+
+            index.remove(key);
+
+            return true; // Last value removed.
+
+        }
+
+        index.put(key, List.copyOf(values)); // Copy-on-write
+
+        return false;
+
+    }
+
+    @VisibleForTesting
+    List<StreamObserver<TickResponse>> getSubscribers(Instrument instrument) {
+        return subscribers.getOrDefault(instrument, List.of());
+    }
+
+    /**
+     * Request the instrument subscriptions to be applied to the context. Requests within the delay are coalesced.
+     */
+    @VisibleForTesting
+    void adjustSubscriptions() {
+
+        if (!adjusting.compareAndSet(false, true)) {
+            return; // Already scheduled.
+        }
+
+        if (subscriptionDelay <= 0) {
+
+            applySubscriptions();
+
+            return;
+
+        }
+
+        executor.schedule(this::applySubscriptions, subscriptionDelay, MILLISECONDS);
+
+    }
+
+    /**
+     * Re-apply the instrument subscriptions, for the session which has just (re)started.
+     */
+    public void resubscribe() {
+
+        adjustLock.lock();
+
+        try {
+
+            applied = null; // Force the next request to be applied.
+
+        } finally {
+
+            adjustLock.unlock();
+
+        }
+
+        adjustSubscriptions();
+
+    }
+
+    private void applySubscriptions() {
+
+        adjustLock.lock();
+
+        try {
+
+            adjusting.set(false); // Changes from here on are applied by the next request.
+
+            Set<Instrument> toBe;
+
+            lock.lock();
+
+            try {
+
+                toBe = Set.copyOf(references.keySet());
+
+            } finally {
+
+                lock.unlock();
+
+            }
+
+            if (toBe.equals(applied)) {
+                return; // No change since the last call.
+            }
+
+            router.apply(toBe);
+
+            applied = toBe;
+
+            logger.debug("Applied subscriptions : {} instruments", toBe.size());
+
+        } catch (RuntimeException e) {
+
+            logger.warn("Failed to apply subscriptions.", e);
+
+        } finally {
+
+            adjustLock.unlock();
 
         }
 
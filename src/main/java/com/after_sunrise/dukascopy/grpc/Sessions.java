@@ -0,0 +1,64 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.system.ClientFactory;
+import com.dukascopy.api.system.IClient;
+import com.google.inject.Inject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * JForex sessions, each connecting with its own credential and feeding the shared endpoint.
+ *
+ * The first session uses the default {@link IClient}, and the others use the new instances from the factory.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Sessions implements AutoCloseable {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final List<Client> clients = new ArrayList<>();
+
+    @Inject
+    public Sessions(Properties properties, IClient client, ScheduledExecutorService executor,
+                    ThreadFactory factory, Journal journal, Endpoint endpoint, Router router) throws ReflectiveOperationException {
+
+        for (String session : router.getSessions()) {
+
+            IClient c = clients.isEmpty() ? client : ClientFactory.getInstance();
+
+            logger.info("Creating session : {}", session);
+
+            clients.add(new Client(session, properties, c, executor, factory, journal, endpoint, router));
+
+        }
+
+    }
+
+    @Override
+    public void close() {
+
+        for (Client client : clients) {
+
+            try {
+
+                client.getClient().disconnect();
+
+            } catch (RuntimeException e) {
+
+                logger.warn("Failed to disconnect session.", e);
+
+            }
+
+        }
+
+    }
+
+}
@@ -12,40 +12,17 @@ import com.dukascopy.api.ITick;
 import com.dukascopy.api.Instrument;
 import com.dukascopy.api.Period;
 import com.google.common.annotations.VisibleForTesting;
-import io.grpc.Server;
-import io.grpc.netty.NettyServerBuilder;
-import io.netty.channel.ChannelOption;
-import io.netty.channel.EventLoopGroup;
-import io.netty.channel.epoll.EpollEventLoopGroup;
-import io.netty.channel.epoll.EpollServerDomainSocketChannel;
-import io.netty.channel.kqueue.KQueueEventLoopGroup;
-import io.netty.channel.kqueue.KQueueServerDomainSocketChannel;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.channel.unix.DomainSocketAddress;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.Triple;
+import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.ref.Cleaner;
-import java.net.InetSocketAddress;
-import java.net.SocketAddress;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.time.Clock;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Properties;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicReference;
 
-import static com.after_sunrise.dukascopy.grpc.Config.CK_CONNECTION_PATH;
-import static com.after_sunrise.dukascopy.grpc.Config.CV_CONNECTION_PATH;
-import static com.after_sunrise.dukascopy.grpc.Config.PATH_PREFIX_EPOLL;
-import static com.after_sunrise.dukascopy.grpc.Config.PATH_PREFIX_KQUEUE;
-
 /**
  * @author takanori.takase
  * @version 0.0.0
@@ -54,121 +31,58 @@ public class Strategy extends DukascopyEndpointImplBase implements IStrategy {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private final Clock clock;
+    private final String session;
 
     private final Properties properties;
 
-    private final Cleaner cleaner;
-
     private final ScheduledExecutorService executor;
 
-    private final AtomicReference<Optional<Triple<IContext, Server, Service>>> reference;
+    private final ThreadFactory factory;
+
+    private final Journal journal;
+
+    private final Endpoint endpoint;
+
+    private final Router router;
 
-    public Strategy(Clock clock, Properties properties, Cleaner cleaner, ScheduledExecutorService executor) {
-        this.clock = Objects.requireNonNull(clock, "Clock is required.");
+    private final AtomicReference<Optional<Pair<IContext, Dispatcher>>> reference;
+
+    public Strategy(String session, Properties properties, ScheduledExecutorService executor,
+                    ThreadFactory factory, Journal journal, Endpoint endpoint, Router router) {
+        this.session = Objects.requireNonNull(session, "Session is required.");
         this.properties = Objects.requireNonNull(properties, "Properties is required.");
-        this.cleaner = Objects.requireNonNull(cleaner, "Cleaner is required.");
         this.executor = Objects.requireNonNull(executor, "Executor is required.");
+        this.factory = Objects.requireNonNull(factory, "ThreadFactory is required.");
+        this.journal = Objects.requireNonNull(journal, "Journal is required.");
+        this.endpoint = Objects.requireNonNull(endpoint, "Endpoint is required.");
+        this.router = Objects.requireNonNull(router, "Router is required.");
         this.reference = new AtomicReference<>(Optional.empty());
     }
 
     @Override
     public synchronized void onStart(IContext context) {
 
-        String path = properties.getProperty(CK_CONNECTION_PATH, CV_CONNECTION_PATH);
-
-        logger.info("Starting server : {}", path);
+        logger.info("Starting session : {}", session);
 
-        onStop(); // Ensure previous server is shutdown.
-
-        Service service = new Service(clock, properties, context);
+        onStop(); // Ensure previous dispatcher is closed.
 
         try {
 
-            Server server;
-
-            if (StringUtils.startsWith(path, PATH_PREFIX_EPOLL)) {
-
-                Path p = Paths.get(StringUtils.removeStart(path, PATH_PREFIX_EPOLL));
-                Files.deleteIfExists(p);
-
-                EventLoopGroup b = new EpollEventLoopGroup();
-                EventLoopGroup w = new EpollEventLoopGroup();
-
-                cleaner.register(service, b::shutdownGracefully);
-                cleaner.register(service, w::shutdownGracefully);
-
-                server = NettyServerBuilder
-                        .forAddress(new DomainSocketAddress(p.toString()))
-                        .channelType(EpollServerDomainSocketChannel.class)
-                        .bossEventLoopGroup(b)
-                        .workerEventLoopGroup(w)
-                        .withChildOption(ChannelOption.SO_KEEPALIVE, null)
-                        .executor(executor)
-                        .addService(service)
-                        .build().start();
-
-            } else if (StringUtils.startsWith(path, PATH_PREFIX_KQUEUE)) {
-
-                Path p = Paths.get(StringUtils.removeStart(path, PATH_PREFIX_KQUEUE));
-                Files.deleteIfExists(p);
-
-                EventLoopGroup b = new KQueueEventLoopGroup();
-                EventLoopGroup w = new KQueueEventLoopGroup();
-
-                cleaner.register(service, b::shutdownGracefully);
-                cleaner.register(service, w::shutdownGracefully);
+            endpoint.start(); // Shared by the sessions, and kept running across the restarts.
 
-                server = NettyServerBuilder
-                        .forAddress(new DomainSocketAddress(p.toString()))
-                        .channelType(KQueueServerDomainSocketChannel.class)
-                        .bossEventLoopGroup(b)
-                        .workerEventLoopGroup(w)
-                        .withChildOption(ChannelOption.SO_KEEPALIVE, null)
-                        .executor(executor)
-                        .addService(service)
-                        .build().start();
+            Service service = endpoint.getService();
 
-            } else {
+            Dispatcher dispatcher = new Dispatcher(properties, factory, service, journal); // Journals the accepted ticks.
 
-                SocketAddress address;
+            reference.set(Optional.of(Pair.of(context, dispatcher)));
 
-                if (StringUtils.contains(path, ':')) {
+            router.onStart(session, context);
 
-                    String host = StringUtils.substringBefore(path, ":");
-
-                    String port = StringUtils.substringAfter(path, ":");
-
-                    address = new InetSocketAddress(host, Integer.parseInt(port));
-
-                } else {
-
-                    address = new InetSocketAddress(Integer.parseInt(path));
-
-                }
-
-                EventLoopGroup b = new NioEventLoopGroup();
-                EventLoopGroup w = new NioEventLoopGroup();
-
-                cleaner.register(service, b::shutdownGracefully);
-                cleaner.register(service, w::shutdownGracefully);
-
-                server = NettyServerBuilder
-                        .forAddress(address)
-                        .channelType(NioServerSocketChannel.class)
-                        .bossEventLoopGroup(b)
-                        .workerEventLoopGroup(w)
-                        .executor(executor)
-                        .addService(service)
-                        .build().start();
-
-            }
-
-            reference.set(Optional.of(Triple.of(context, server, service)));
+            service.resubscribe();
 
         } catch (Throwable e) {
 
-            logger.error("Failed to start server : {}", path, e);
+            logger.error("Failed to start session : {}", session, e);
 
             executor.execute(context::stop); // Trigger IClient restart.
 
@@ -181,11 +95,13 @@ public class Strategy extends DukascopyEndpointImplBase implements IStrategy {
 
         reference.getAndSet(Optional.empty()).ifPresent(ref -> {
 
-            logger.info("Terminating server.");
+            logger.info("Terminating session : {}", session);
 
-            ref.getMiddle().shutdownNow();
+            router.onStop(session, ref.getLeft());
 
-            ref.getRight().onShutdown();
+            ref.getRight().close();
+
+            ref.getRight().getService().markStale(); // Streams are kept open for the restart.
 
         });
 
@@ -227,9 +143,19 @@ public class Strategy extends DukascopyEndpointImplBase implements IStrategy {
     @Override
     public void onTick(Instrument instrument, ITick tick) {
 
-        logger.trace("Tick update : {}", lazyString(instrument, tick));
+        if (logger.isTraceEnabled()) {
+            logger.trace("Tick update : {}", lazyString(instrument, tick));
+        }
+
+        if (instrument != null) {
+            Metrics.of(instrument).onReceived();
+        }
+
+        Optional<Pair<IContext, Dispatcher>> ref = reference.get();
 
-        reference.get().map(Triple::getRight).ifPresent(s -> s.onTick(instrument, tick));
+        if (ref.isPresent()) {
+            ref.get().getRight().onTick(instrument, tick); // Without the intermediate Optional and lambda.
+        }
 
     }
 
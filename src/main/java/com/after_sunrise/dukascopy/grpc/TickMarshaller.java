@@ -0,0 +1,84 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import io.grpc.Drainable;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor.Marshaller;
+import io.grpc.protobuf.ProtoUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+
+/**
+ * Response marshaller which encodes the same {@link TickResponse} instance only once per thread.
+ *
+ * The fan-out hands an identical message to every subscriber, and each {@code ServerCall} marshals it on the
+ * caller thread. The serialized bytes of the latest message are retained in a slot of the calling thread, and are
+ * copied as-is into the frames of the subsequent calls instead of encoding the message again. The slots are per
+ * thread, so that the dispatcher shards and the timers marshalling different messages concurrently do not evict
+ * each other.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class TickMarshaller implements Marshaller<TickResponse> {
+
+    private final Marshaller<TickResponse> delegate = ProtoUtils.marshaller(TickResponse.getDefaultInstance());
+
+    private final ThreadLocal<Slot> slots = ThreadLocal.withInitial(Slot::new);
+
+    @Override
+    public InputStream stream(TickResponse value) {
+
+        Slot slot = slots.get();
+
+        if (slot.message != value) {
+
+            slot.bytes = value.toByteArray();
+
+            slot.message = value;
+
+        }
+
+        return new FrameStream(slot.bytes);
+
+    }
+
+    @Override
+    public TickResponse parse(InputStream stream) {
+        return delegate.parse(stream);
+    }
+
+    private static class Slot {
+
+        private TickResponse message;
+
+        private byte[] bytes;
+
+    }
+
+    private static class FrameStream extends ByteArrayInputStream implements KnownLength, Drainable {
+
+        private FrameStream(byte[] bytes) {
+            super(bytes);
+        }
+
+        @Override
+        public int drainTo(OutputStream target) throws IOException {
+
+            int length = count - pos;
+
+            target.write(buf, pos, length);
+
+            pos = count;
+
+            return length;
+
+        }
+
+    }
+
+}
@@ -0,0 +1,215 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.inject.Inject;
+import io.grpc.netty.NettyServerBuilder;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.kqueue.KQueueEventLoopGroup;
+import io.netty.channel.kqueue.KQueueServerDomainSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ThreadFactory;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_TRANSPORT_BOSS_THREADS;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_TRANSPORT_NATIVE;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_TRANSPORT_REUSE_PORT;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_TRANSPORT_WORKER_THREADS;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_TRANSPORT_BOSS_THREADS;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_TRANSPORT_NATIVE;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_TRANSPORT_REUSE_PORT;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_TRANSPORT_WORKER_THREADS;
+import static com.after_sunrise.dukascopy.grpc.Config.PATH_PREFIX_EPOLL;
+import static com.after_sunrise.dukascopy.grpc.Config.PATH_PREFIX_KQUEUE;
+
+/**
+ * Netty event loop groups, which are kept for the life of the application and shared across the server restarts.
+ *
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class Transport implements AutoCloseable {
+
+    enum Type {
+
+        EPOLL {
+            @Override
+            EventLoopGroup create(int threads, ThreadFactory factory) {
+                return new EpollEventLoopGroup(threads, factory);
+            }
+        },
+
+        KQUEUE {
+            @Override
+            EventLoopGroup create(int threads, ThreadFactory factory) {
+                return new KQueueEventLoopGroup(threads, factory);
+            }
+        },
+
+        NIO {
+            @Override
+            EventLoopGroup create(int threads, ThreadFactory factory) {
+                return new NioEventLoopGroup(threads, factory);
+            }
+        };
+
+        abstract EventLoopGroup create(int threads, ThreadFactory factory);
+
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final Map<Type, EventLoopGroup> bosses = new EnumMap<>(Type.class);
+
+    private final Map<Type, EventLoopGroup> workers = new EnumMap<>(Type.class);
+
+    private final int bossThreads;
+
+    private final int workerThreads;
+
+    private final boolean nativeTcp;
+
+    private final boolean reusePort;
+
+    @Inject
+    public Transport(Properties properties) {
+        this.bossThreads = Integer.parseInt(properties.getProperty(CK_TRANSPORT_BOSS_THREADS, String.valueOf(CV_TRANSPORT_BOSS_THREADS)));
+        this.workerThreads = Integer.parseInt(properties.getProperty(CK_TRANSPORT_WORKER_THREADS, String.valueOf(CV_TRANSPORT_WORKER_THREADS)));
+        this.nativeTcp = Boolean.parseBoolean(properties.getProperty(CK_TRANSPORT_NATIVE, String.valueOf(CV_TRANSPORT_NATIVE)));
+        this.reusePort = Boolean.parseBoolean(properties.getProperty(CK_TRANSPORT_REUSE_PORT, String.valueOf(CV_TRANSPORT_REUSE_PORT)));
+    }
+
+    @Override
+    public synchronized void close() {
+
+        bosses.values().forEach(EventLoopGroup::shutdownGracefully);
+
+        workers.values().forEach(EventLoopGroup::shutdownGracefully);
+
+        bosses.clear();
+
+        workers.clear();
+
+    }
+
+    @VisibleForTesting
+    synchronized EventLoopGroup getGroup(Type type, boolean boss) {
+
+        Map<Type, EventLoopGroup> groups = boss ? bosses : workers;
+
+        return groups.computeIfAbsent(type, t -> {
+
+            String name = "dukas-grpc-" + t.name().toLowerCase() + (boss ? "-boss" : "-worker");
+
+            logger.info("Creating event loop group : {}", name);
+
+            return t.create(boss ? bossThreads : workerThreads, new DefaultThreadFactory(name, true));
+
+        });
+
+    }
+
+    /**
+     * Create a server builder for the path, bound to the shared event loop groups.
+     *
+     * @param path {@code epoll:<file>} or {@code kqueue:<file>} for the domain socket, {@code [host:]port} for TCP.
+     * @return Server builder.
+     * @throws IOException If failed to clean up the previous domain socket file.
+     */
+    public NettyServerBuilder newServerBuilder(String path) throws IOException {
+
+        if (StringUtils.startsWith(path, PATH_PREFIX_EPOLL)) {
+
+            Path p = Paths.get(StringUtils.removeStart(path, PATH_PREFIX_EPOLL));
+            Files.deleteIfExists(p);
+
+            return NettyServerBuilder
+                    .forAddress(new DomainSocketAddress(p.toString()))
+                    .channelType(EpollServerDomainSocketChannel.class)
+                    .bossEventLoopGroup(getGroup(Type.EPOLL, true))
+                    .workerEventLoopGroup(getGroup(Type.EPOLL, false))
+                    .withChildOption(ChannelOption.SO_KEEPALIVE, null);
+
+        }
+
+        if (StringUtils.startsWith(path, PATH_PREFIX_KQUEUE)) {
+
+            Path p = Paths.get(StringUtils.removeStart(path, PATH_PREFIX_KQUEUE));
+            Files.deleteIfExists(p);
+
+            return NettyServerBuilder
+                    .forAddress(new DomainSocketAddress(p.toString()))
+                    .channelType(KQueueServerDomainSocketChannel.class)
+                    .bossEventLoopGroup(getGroup(Type.KQUEUE, true))
+                    .workerEventLoopGroup(getGroup(Type.KQUEUE, false))
+                    .withChildOption(ChannelOption.SO_KEEPALIVE, null);
+
+        }
+
+        InetSocketAddress address;
+
+        if (StringUtils.contains(path, ':')) {
+
+            String host = StringUtils.substringBefore(path, ":");
+
+            String port = StringUtils.substringAfter(path, ":");
+
+            address = new InetSocketAddress(host, Integer.parseInt(port));
+
+        } else {
+
+            address = new InetSocketAddress(Integer.parseInt(path));
+
+        }
+
+        if (nativeTcp && Epoll.isAvailable()) {
+
+            if (reusePort) {
+                logger.info("Enabling SO_REUSEPORT : {}", address);
+            }
+
+            return NettyServerBuilder
+                    .forAddress(address)
+                    .channelFactory(() -> {
+                        EpollServerSocketChannel channel = new EpollServerSocketChannel();
+                        channel.config().setReusePort(reusePort); // No server channel option on the builder.
+                        return channel;
+                    })
+                    .bossEventLoopGroup(getGroup(Type.EPOLL, true))
+                    .workerEventLoopGroup(getGroup(Type.EPOLL, false))
+                    .withChildOption(ChannelOption.TCP_NODELAY, true);
+
+        }
+
+        if (nativeTcp) {
+            logger.info("Falling back to NIO : {}", String.valueOf(Epoll.unavailabilityCause()));
+        }
+
+        return NettyServerBuilder
+                .forAddress(address)
+                .channelType(NioServerSocketChannel.class)
+                .bossEventLoopGroup(getGroup(Type.NIO, true))
+                .workerEventLoopGroup(getGroup(Type.NIO, false))
+                .withChildOption(ChannelOption.TCP_NODELAY, true);
+
+    }
+
+}
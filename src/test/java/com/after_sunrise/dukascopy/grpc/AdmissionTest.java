@@ -0,0 +1,214 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.after_sunrise.dukascopy.grpc.proto.DukascopyEndpointGrpc;
+import io.grpc.Attributes;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessSocketAddress;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Clock;
+import java.util.Properties;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_ADMISSION_STATUS_BURST;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_ADMISSION_STATUS_RATE;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_ADMISSION_STREAMS;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_ADMISSION_SYMBOLS;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.ManageRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.ReplayRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.StatusRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.StatusResponse;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class AdmissionTest {
+
+    private Clock clock;
+
+    private Admission target;
+
+    @BeforeEach
+    void setUp() {
+
+        clock = mock(Clock.class);
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_ADMISSION_STREAMS, "2");
+        properties.setProperty(CK_ADMISSION_SYMBOLS, "2");
+        properties.setProperty(CK_ADMISSION_STATUS_RATE, "1");
+        properties.setProperty(CK_ADMISSION_STATUS_BURST, "2");
+
+        target = new Admission(clock, properties);
+
+    }
+
+    private static <Q, R> ServerCall<Q, R> call(MethodDescriptor<Q, R> method, String host) {
+        return call(method, new InetSocketAddress(host, 12345));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <Q, R> ServerCall<Q, R> call(MethodDescriptor<Q, R> method, SocketAddress address) {
+        ServerCall<Q, R> call = mock(ServerCall.class);
+        Attributes attributes = Attributes.newBuilder()
+                .set(Grpc.TRANSPORT_ATTR_REMOTE_ADDR, address).build();
+        when(call.getMethodDescriptor()).thenReturn(method);
+        when(call.getAttributes()).thenReturn(attributes);
+        return call;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <Q, R> ServerCallHandler<Q, R> handler(ServerCall.Listener<Q> listener) {
+        ServerCallHandler<Q, R> handler = mock(ServerCallHandler.class);
+        when(handler.startCall(any(), any())).thenReturn(listener);
+        return handler;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <Q> ServerCall.Listener<Q> listener() {
+        return mock(ServerCall.Listener.class);
+    }
+
+    private static boolean exhausted(Status status) {
+        return status.getCode() == Status.Code.RESOURCE_EXHAUSTED;
+    }
+
+    @Test
+    void testStreams() {
+
+        ServerCallHandler<TickRequest, TickResponse> handler = handler(listener());
+
+        ServerCall<TickRequest, TickResponse> c1 = call(DukascopyEndpointGrpc.getSubscribeMethod(), "127.0.0.1");
+        ServerCall<TickRequest, TickResponse> c2 = call(DukascopyEndpointGrpc.getSubscribeMethod(), "127.0.0.1");
+        ServerCall<TickRequest, TickResponse> c3 = call(DukascopyEndpointGrpc.getSubscribeMethod(), "127.0.0.1");
+        ServerCall<TickRequest, TickResponse> c4 = call(DukascopyEndpointGrpc.getSubscribeMethod(), "127.0.0.2");
+        ServerCall<TickRequest, TickResponse> c5 = call(DukascopyEndpointGrpc.getSubscribeMethod(), "127.0.0.1");
+
+        ServerCall.Listener<TickRequest> l1 = target.interceptCall(c1, new Metadata(), handler);
+        target.interceptCall(c2, new Metadata(), handler);
+        target.interceptCall(c3, new Metadata(), handler); // Exceeds
+        target.interceptCall(c4, new Metadata(), handler); // Another peer
+        verify(c1, never()).close(any(), any());
+        verify(c2, never()).close(any(), any());
+        verify(c3).close(argThat(AdmissionTest::exhausted), any());
+        verify(c4, never()).close(any(), any());
+        verify(handler, times(3)).startCall(any(), any());
+
+        // Released once, even if terminated twice.
+        l1.onCancel();
+        l1.onComplete();
+        target.interceptCall(c5, new Metadata(), handler);
+        verify(c5, never()).close(any(), any());
+        target.interceptCall(c3, new Metadata(), handler);
+        verify(c3, times(2)).close(argThat(AdmissionTest::exhausted), any());
+
+    }
+
+    @Test
+    void testStreams_Local() {
+
+        ServerCallHandler<TickRequest, TickResponse> handler = handler(listener());
+
+        SocketAddress address = new InProcessSocketAddress("test");
+
+        for (int i = 0; i < 3; i++) {
+
+            ServerCall<TickRequest, TickResponse> c = call(DukascopyEndpointGrpc.getSubscribeMethod(), address);
+            target.interceptCall(c, new Metadata(), handler); // Exempt
+            verify(c, never()).close(any(), any());
+
+        }
+
+        ServerCall<TickRequest, TickResponse> c = call(DukascopyEndpointGrpc.getSubscribeMethod(), "127.0.0.1");
+        target.interceptCall(c, new Metadata(), handler); // Not shared with the local ones.
+        verify(c, never()).close(any(), any());
+        verify(handler, times(4)).startCall(any(), any());
+
+        // Symbols are still limited.
+        ServerCall.Listener<ReplayRequest> delegate = listener();
+        ServerCall<ReplayRequest, TickResponse> r = call(DukascopyEndpointGrpc.getReplayMethod(), address);
+        ServerCall.Listener<ReplayRequest> l = target.interceptCall(r, new Metadata(), handler(delegate));
+        l.onMessage(ReplayRequest.newBuilder().addSymbols("EURUSD").addSymbols("USDJPY").addSymbols("GBPUSD").build());
+        verify(r).close(argThat(AdmissionTest::exhausted), any());
+        verify(delegate, never()).onMessage(any());
+        l.onCancel();
+
+    }
+
+    @Test
+    void testSymbols() {
+
+        ServerCall.Listener<TickRequest> delegate = listener();
+        ServerCall<TickRequest, TickResponse> call = call(DukascopyEndpointGrpc.getSubscribeMethod(), "127.0.0.1");
+
+        ServerCall.Listener<TickRequest> l = target.interceptCall(call, new Metadata(), handler(delegate));
+        l.onMessage(TickRequest.newBuilder().addSymbols("EURUSD").addSymbols("USDJPY").addSymbols("GBPUSD").build());
+        l.onHalfClose();
+        verify(call).close(argThat(AdmissionTest::exhausted), any());
+        verify(delegate, never()).onMessage(any());
+        verify(delegate, never()).onHalfClose();
+        verify(delegate).onCancel();
+
+        // Cumulative within the managed stream.
+        ServerCall.Listener<ManageRequest> managed = listener();
+        ServerCall<ManageRequest, TickResponse> c = call(DukascopyEndpointGrpc.getManageMethod(), "127.0.0.1");
+
+        ServerCall.Listener<ManageRequest> m = target.interceptCall(c, new Metadata(), handler(managed));
+        m.onMessage(ManageRequest.newBuilder().addAdd("EURUSD").addAdd("USDJPY").build());
+        m.onMessage(ManageRequest.newBuilder().addAdd("GBPUSD").addRemove("USDJPY").build());
+        verify(managed, times(2)).onMessage(any());
+        verify(c, never()).close(any(), any());
+        m.onMessage(ManageRequest.newBuilder().addAdd("AUDUSD").build());
+        verify(c).close(argThat(AdmissionTest::exhausted), any());
+        verify(managed, times(2)).onMessage(any());
+        verify(managed).onCancel();
+        m.onComplete();
+        verify(managed, never()).onComplete();
+
+    }
+
+    @Test
+    void testStatus() {
+
+        ServerCallHandler<StatusRequest, StatusResponse> handler = handler(listener());
+
+        ServerCall<StatusRequest, StatusResponse> c1 = call(DukascopyEndpointGrpc.getStatusMethod(), "127.0.0.1");
+        ServerCall<StatusRequest, StatusResponse> c2 = call(DukascopyEndpointGrpc.getStatusMethod(), "127.0.0.2");
+
+        when(clock.millis()).thenReturn(1000L);
+        target.interceptCall(c1, new Metadata(), handler);
+        target.interceptCall(c1, new Metadata(), handler); // Burst
+        target.interceptCall(c1, new Metadata(), handler);
+        target.interceptCall(c2, new Metadata(), handler);
+        verify(c1, times(1)).close(argThat(AdmissionTest::exhausted), any());
+        verify(c2, never()).close(any(), any());
+
+        when(clock.millis()).thenReturn(1500L);
+        target.interceptCall(c1, new Metadata(), handler);
+        verify(c1, times(2)).close(argThat(AdmissionTest::exhausted), any());
+
+        when(clock.millis()).thenReturn(2100L); // Refilled
+        target.interceptCall(c1, new Metadata(), handler);
+        verify(c1, times(2)).close(any(), any());
+        verify(handler, times(4)).startCall(any(), any());
+
+    }
+
+}
@@ -0,0 +1,81 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.DepthLevel;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.DepthResponse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class BookTest {
+
+    static Depth depth(int levels, double[] asks, double[] askSizes, double[] bids, double[] bidSizes) {
+        ITick tick = mock(ITick.class);
+        when(tick.getAsks()).thenReturn(asks);
+        when(tick.getAskVolumes()).thenReturn(askSizes);
+        when(tick.getBids()).thenReturn(bids);
+        when(tick.getBidVolumes()).thenReturn(bidSizes);
+        Depth depth = new Depth(levels);
+        depth.set(tick);
+        return depth;
+    }
+
+    private static List<String> levels(List<DepthLevel> levels) {
+        return levels.stream().map(l -> l.getAction() + ":" + l.getPrice() + ":" + l.getSize()).collect(Collectors.toList());
+    }
+
+    @Test
+    void testOnDepth() {
+
+        Book target = new Book(Instrument.EURUSD, 3);
+
+        // Initial
+        DepthResponse r = target.onDepth(1000L, depth(3,
+                new double[]{1.3, 1.4, 1.5, 1.6}, new double[]{1, 2, 3, 4},
+                new double[]{1.2, 1.1}, new double[]{5, 6}));
+        assertEquals("EURUSD", r.getSymbol());
+        assertEquals(1000L, r.getTime());
+        assertEquals(List.of("ADD:1.3:1.0", "ADD:1.4:2.0", "ADD:1.5:3.0"), levels(r.getAsksList())); // Truncated
+        assertEquals(List.of("ADD:1.2:5.0", "ADD:1.1:6.0"), levels(r.getBidsList()));
+
+        // Unchanged
+        assertNull(target.onDepth(1001L, depth(3,
+                new double[]{1.3, 1.4, 1.5}, new double[]{1, 2, 3},
+                new double[]{1.2, 1.1}, new double[]{5, 6})));
+
+        // Changes
+        r = target.onDepth(1002L, depth(3,
+                new double[]{1.25, 1.4, 1.5}, new double[]{7, 2, 8},
+                new double[]{1.2, 1.15, 1.1}, new double[]{5, 9, 6}));
+        assertEquals(List.of("ADD:1.25:7.0", "REMOVE:1.3:0.0", "CHANGE:1.5:8.0"), levels(r.getAsksList()));
+        assertEquals(List.of("ADD:1.15:9.0"), levels(r.getBidsList()));
+
+        // Removal
+        r = target.onDepth(1003L, depth(3, new double[0], new double[0], null, null));
+        assertEquals(3, r.getAsksCount());
+        assertEquals(3, r.getBidsCount());
+        assertTrue(r.getAsksList().stream().allMatch(l -> l.getAction() == DepthLevel.Action.REMOVE));
+
+        // Snapshot
+        target.onDepth(1004L, depth(3, new double[]{1.3}, new double[]{1}, new double[]{1.2}, new double[]{2}));
+        r = target.getSnapshot();
+        assertTrue(r.getSnapshot());
+        assertEquals(1004L, r.getTime());
+        assertEquals(List.of("ADD:1.3:1.0"), levels(r.getAsksList()));
+        assertEquals(List.of("ADD:1.2:2.0"), levels(r.getBidsList()));
+
+    }
+
+}
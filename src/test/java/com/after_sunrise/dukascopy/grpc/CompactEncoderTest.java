@@ -0,0 +1,121 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.CompactTick;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class CompactEncoderTest {
+
+    private static List<TickResponse> ticks(int count) {
+
+        Random random = new Random(12345);
+
+        String[] symbols = {"EURUSD", "USDJPY"};
+        double[] mids = {1.11230, 107.650};
+        double[] pips = {0.0001, 0.01};
+        long time = 1590969600000L;
+
+        List<TickResponse> ticks = new ArrayList<>(count);
+
+        for (int i = 0; i < count; i++) {
+
+            int s = random.nextInt(symbols.length);
+
+            mids[s] += (random.nextInt(5) - 2) * pips[s] / 10; // Random walk in pipettes
+
+            double spread = (2 + random.nextInt(3)) * pips[s] / 10;
+
+            time += random.nextInt(250);
+
+            ticks.add(TickResponse.newBuilder()
+                    .setSymbol(symbols[s])
+                    .setTime(time)
+                    .setStale(i % 1000 == 999)
+                    .setAskPrice(mids[s] + spread)
+                    .setAskSize(random.nextInt(4) == 0 ? 1.25 + random.nextInt(8) * 0.25 : 1.0)
+                    .setBidPrice(mids[s] - spread)
+                    .setBidSize(random.nextInt(4) == 0 ? 0.5 + random.nextInt(8) * 0.25 : 1.0)
+                    .build());
+
+        }
+
+        return ticks;
+
+    }
+
+    @Test
+    void testRoundTrip() {
+
+        List<TickResponse> ticks = ticks(10_000);
+
+        List<CompactTick> encoded = new ArrayList<>();
+
+        CompactEncoder encoder = new CompactEncoder(new StreamObserver<>() {
+            @Override
+            public void onNext(CompactTick value) {
+                encoded.add(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+
+            @Override
+            public void onCompleted() {
+            }
+        }, 2);
+
+        ticks.forEach(encoder::onNext);
+
+        assertEquals(ticks.size(), encoded.size());
+        assertEquals("EURUSD", encoded.stream().filter(t -> t.getId() == 1).findFirst().get().getSymbol());
+        assertEquals("USDJPY", encoded.stream().filter(t -> t.getId() == 2).findFirst().get().getSymbol());
+        assertEquals(2, encoded.stream().filter(t -> !t.getSymbol().isEmpty()).count());
+
+        CompactDecoder decoder = new CompactDecoder();
+
+        for (int i = 0; i < ticks.size(); i++) {
+
+            TickResponse expect = ticks.get(i);
+            TickResponse actual = decoder.decode(encoded.get(i));
+
+            assertEquals(expect.getSymbol(), actual.getSymbol());
+            assertEquals(expect.getTime(), actual.getTime());
+            assertEquals(expect.getStale(), actual.getStale());
+            assertEquals(expect.getAskPrice(), actual.getAskPrice(), 1e-9);
+            assertEquals(expect.getAskSize(), actual.getAskSize(), 1e-9);
+            assertEquals(expect.getBidPrice(), actual.getBidPrice(), 1e-9);
+            assertEquals(expect.getBidSize(), actual.getBidSize(), 1e-9);
+
+        }
+
+        long plain = ticks.stream().mapToLong(TickResponse::getSerializedSize).sum();
+        long compact = encoded.stream().mapToLong(CompactTick::getSerializedSize).sum();
+
+        assertTrue(compact * 4 < plain, "Compact : " + compact + " / Plain : " + plain);
+
+    }
+
+    @Test
+    void testDecode_Unknown() {
+
+        CompactDecoder decoder = new CompactDecoder();
+
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode(CompactTick.newBuilder().setId(1).build()));
+
+    }
+
+}
@@ -0,0 +1,173 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class ConflatorTest {
+
+    private ServerCallStreamObserver<TickResponse> delegate;
+
+    private Conflator target;
+
+    private Runnable ready;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+
+        delegate = mock(ServerCallStreamObserver.class);
+
+        target = new Conflator(delegate, delegate, 0);
+
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(delegate).setOnReadyHandler(captor.capture());
+        ready = captor.getValue();
+
+    }
+
+    private static TickResponse tick(String symbol, long time) {
+        return TickResponse.newBuilder().setSymbol(symbol).setTime(time).build();
+    }
+
+    @Test
+    void testOnNext() {
+
+        // Ready : Tick-by-tick
+        when(delegate.isReady()).thenReturn(true);
+        target.onNext(tick("EURUSD", 1));
+        target.onNext(tick("EURUSD", 2));
+        verify(delegate).onNext(tick("EURUSD", 1));
+        verify(delegate).onNext(tick("EURUSD", 2));
+
+        // Not ready : Latest per symbol
+        when(delegate.isReady()).thenReturn(false);
+        target.onNext(tick("EURUSD", 3));
+        target.onNext(tick("USDJPY", 4));
+        target.onNext(tick("EURUSD", 5));
+        target.onNext(tick("USDJPY", 6));
+        assertEquals(2, target.getPending());
+        verify(delegate, never()).onNext(tick("EURUSD", 3));
+
+        // Ready again
+        when(delegate.isReady()).thenReturn(true);
+        ready.run();
+        InOrder order = inOrder(delegate);
+        order.verify(delegate).onNext(tick("EURUSD", 5));
+        order.verify(delegate).onNext(tick("USDJPY", 6));
+        assertEquals(0, target.getPending());
+        verify(delegate, never()).onNext(tick("EURUSD", 3));
+        verify(delegate, never()).onNext(tick("USDJPY", 4));
+
+    }
+
+    @Test
+    void testOnNext_Throttled() {
+
+        Conflator throttled = new Conflator(delegate, null, 100);
+
+        when(delegate.isReady()).thenReturn(true);
+        throttled.onNext(tick("EURUSD", 1));
+        throttled.onNext(tick("USDJPY", 2));
+        throttled.onNext(tick("EURUSD", 3));
+        assertEquals(2, throttled.getPending());
+        verify(delegate, never()).onNext(any());
+
+        throttled.run();
+        InOrder order = inOrder(delegate);
+        order.verify(delegate).onNext(tick("EURUSD", 3));
+        order.verify(delegate).onNext(tick("USDJPY", 2));
+        assertEquals(0, throttled.getPending());
+
+        throttled.run();
+        verify(delegate, never()).onNext(tick("EURUSD", 1));
+
+    }
+
+    @Test
+    void testOnNext_ThrottledConflated() {
+
+        Conflator throttled = new Conflator(delegate, delegate, 100);
+        verify(delegate).setOnReadyHandler(any()); // Only the one in the setup.
+
+        // Timer run while not ready
+        when(delegate.isReady()).thenReturn(false);
+        throttled.onNext(tick("EURUSD", 1));
+        throttled.onNext(tick("EURUSD", 2));
+        throttled.run();
+        assertEquals(1, throttled.getPending());
+        verify(delegate, never()).onNext(any());
+
+        // Ready transition between the timer runs
+        when(delegate.isReady()).thenReturn(true);
+        throttled.onNext(tick("EURUSD", 3));
+        assertEquals(1, throttled.getPending());
+        verify(delegate, never()).onNext(any());
+
+        // Next timer run
+        throttled.run();
+        verify(delegate).onNext(tick("EURUSD", 3));
+        verify(delegate, never()).onNext(tick("EURUSD", 2));
+        assertEquals(0, throttled.getPending());
+
+    }
+
+    @Test
+    void testOnReady_Failure() {
+
+        List<RuntimeException> failures = new ArrayList<>();
+        target.setOnFailureHandler(failures::add);
+
+        when(delegate.isReady()).thenReturn(false);
+        target.onNext(tick("EURUSD", 1));
+
+        IllegalStateException e = new IllegalStateException("test");
+        doThrow(e).when(delegate).onNext(any());
+        when(delegate.isReady()).thenReturn(true);
+        ready.run(); // Not thrown into the gRPC listener.
+        assertEquals(List.of(e), failures);
+
+        // Without the handler
+        target.setOnFailureHandler(null);
+        when(delegate.isReady()).thenReturn(false);
+        target.onNext(tick("EURUSD", 2));
+        when(delegate.isReady()).thenReturn(true);
+        ready.run();
+        verify(delegate).onError(e);
+
+    }
+
+    @Test
+    void testOnCompleted() {
+
+        when(delegate.isReady()).thenReturn(false);
+        target.onNext(tick("EURUSD", 1));
+        assertEquals(1, target.getPending());
+
+        target.onCompleted();
+        assertEquals(0, target.getPending());
+        verify(delegate).onCompleted();
+        verify(delegate, never()).onNext(any());
+
+    }
+
+}
@@ -0,0 +1,247 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_DISPATCH_CAPACITY;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_DISPATCH_OVERFLOW;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_DISPATCH_SHARDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class DispatcherTest {
+
+    private final ThreadFactory factory = Executors.defaultThreadFactory();
+
+    private static ITick tick(long time) {
+        ITick tick = mock(ITick.class);
+        when(tick.getTime()).thenReturn(time);
+        when(tick.getAsk()).thenReturn(1.2);
+        when(tick.getAskVolume()).thenReturn(3.4);
+        when(tick.getBid()).thenReturn(1.1);
+        when(tick.getBidVolume()).thenReturn(5.6);
+        return tick;
+    }
+
+    @Test
+    void testOnTick_Synchronous() {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_DISPATCH_CAPACITY, "0");
+
+        Service service = mock(Service.class);
+
+        try (Dispatcher target = new Dispatcher(properties, factory, service)) {
+
+            target.onTick(Instrument.EURUSD, tick(123));
+            target.onTick(null, tick(456));
+            target.onTick(Instrument.EURUSD, null);
+
+            verify(service).onTick(Instrument.EURUSD, 123, 1.2, 3.4, 1.1, 5.6);
+            verify(service, times(1)).onTick(eq(Instrument.EURUSD), anyLong(), anyDouble(), anyDouble(), anyDouble(), anyDouble());
+
+        }
+
+    }
+
+    @Test
+    void testOnTick_Depth() {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_DISPATCH_CAPACITY, "0");
+
+        Service service = mock(Service.class);
+
+        try (Dispatcher target = new Dispatcher(properties, factory, service)) {
+
+            // No depth listeners
+            ITick t1 = tick(123);
+            target.onTick(Instrument.EURUSD, t1);
+            verify(t1, never()).getAsks();
+            verify(service, never()).onDepth(any(), anyLong(), any());
+
+            // Depth listeners
+            ITick t2 = tick(456);
+            when(t2.getAsks()).thenReturn(new double[]{1.2});
+            when(t2.getAskVolumes()).thenReturn(new double[]{3.4});
+            when(t2.getBids()).thenReturn(new double[]{1.1});
+            when(t2.getBidVolumes()).thenReturn(new double[]{5.6});
+            when(service.hasDepth(Instrument.EURUSD)).thenReturn(true);
+            target.onTick(Instrument.EURUSD, t2); // Duplicate
+            verify(service, never()).onDepth(any(), anyLong(), any());
+
+            when(service.onTick(eq(Instrument.EURUSD), anyLong(), anyDouble(), anyDouble(), anyDouble(), anyDouble())).thenReturn(true);
+            target.onTick(Instrument.EURUSD, t2);
+            verify(service).onDepth(eq(Instrument.EURUSD), eq(456L), any());
+
+        }
+
+    }
+
+    @Test
+    void testOnTick_Journal() {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_DISPATCH_CAPACITY, "0");
+
+        Service service = mock(Service.class);
+
+        Journal journal = mock(Journal.class);
+
+        try (Dispatcher target = new Dispatcher(properties, factory, service, journal)) {
+
+            ITick t1 = tick(123);
+            target.onTick(Instrument.EURUSD, t1); // Duplicate
+            verify(journal, never()).onTick(any(), any());
+
+            when(service.onTick(eq(Instrument.EURUSD), anyLong(), anyDouble(), anyDouble(), anyDouble(), anyDouble())).thenReturn(true);
+            target.onTick(Instrument.EURUSD, t1);
+            verify(journal).onTick(Instrument.EURUSD, t1);
+
+        }
+
+        properties.setProperty(CK_DISPATCH_CAPACITY, "4");
+
+        try (Dispatcher target = new Dispatcher(properties, factory, service, journal)) {
+
+            target.onTick(Instrument.USDJPY, tick(456)); // Duplicate
+            target.onTick(Instrument.EURUSD, tick(789));
+            verify(journal, timeout(1000)).append(Instrument.EURUSD, 789, 1.2, 3.4, 1.1, 5.6);
+            verify(journal, never()).append(eq(Instrument.USDJPY), anyLong(), anyDouble(), anyDouble(), anyDouble(), anyDouble());
+
+        }
+
+    }
+
+    @Test
+    void testOnTick_Asynchronous() {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_DISPATCH_CAPACITY, "3"); // Rounded up to 4
+        properties.setProperty(CK_DISPATCH_SHARDS, "1");
+
+        Service service = mock(Service.class);
+
+        try (Dispatcher target = new Dispatcher(properties, factory, service)) {
+
+            for (int i = 0; i < 100; i++) {
+                target.onTick(i % 2 == 0 ? Instrument.EURUSD : Instrument.USDJPY, tick(i));
+            }
+
+            InOrder order = inOrder(service);
+
+            for (int i = 0; i < 100; i++) {
+                order.verify(service, timeout(1000)).onTick(i % 2 == 0 ? Instrument.EURUSD : Instrument.USDJPY, i, 1.2, 3.4, 1.1, 5.6);
+            }
+
+        }
+
+    }
+
+    @Test
+    void testOnTick_Sharded() {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_DISPATCH_CAPACITY, "4");
+        properties.setProperty(CK_DISPATCH_SHARDS, "3");
+
+        Service service = mock(Service.class);
+
+        List<Instrument> instruments = List.of(Instrument.EURUSD, Instrument.USDJPY, Instrument.GBPUSD, Instrument.AUDUSD);
+
+        Map<Instrument, Set<String>> threads = new ConcurrentHashMap<>();
+
+        doAnswer(invocation -> {
+            Instrument instrument = invocation.getArgument(0);
+            threads.computeIfAbsent(instrument, k -> ConcurrentHashMap.newKeySet()).add(Thread.currentThread().getName());
+            return true;
+        }).when(service).onTick(any(), anyLong(), anyDouble(), anyDouble(), anyDouble(), anyDouble());
+
+        try (Dispatcher target = new Dispatcher(properties, factory, service)) {
+
+            for (int i = 0; i < 100; i++) {
+                target.onTick(instruments.get(i % instruments.size()), tick(i));
+            }
+
+            for (Instrument instrument : instruments) {
+
+                InOrder order = inOrder(service); // Ordered per instrument.
+
+                for (int i = instruments.indexOf(instrument); i < 100; i += instruments.size()) {
+                    order.verify(service, timeout(1000)).onTick(instrument, i, 1.2, 3.4, 1.1, 5.6);
+                }
+
+                assertEquals(1, threads.get(instrument).size()); // Pinned to a shard.
+
+            }
+
+        }
+
+    }
+
+    @Test
+    void testOnTick_Overflow() throws InterruptedException {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_DISPATCH_CAPACITY, "2");
+        properties.setProperty(CK_DISPATCH_OVERFLOW, Dispatcher.Overflow.DROP.name());
+
+        Service service = mock(Service.class);
+
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        doAnswer(invocation -> {
+            entered.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        }).when(service).onTick(eq(Instrument.EURUSD), eq(0L), anyDouble(), anyDouble(), anyDouble(), anyDouble());
+
+        try (Dispatcher target = new Dispatcher(properties, factory, service)) {
+
+            target.onTick(Instrument.EURUSD, tick(0));
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+            target.onTick(Instrument.EURUSD, tick(1));
+            target.onTick(Instrument.EURUSD, tick(2)); // Dropped (0 is still in-flight)
+            target.onTick(Instrument.EURUSD, tick(3)); // Dropped
+
+            release.countDown();
+
+            verify(service, timeout(1000)).onTick(Instrument.EURUSD, 1, 1.2, 3.4, 1.1, 5.6);
+            target.onTick(Instrument.EURUSD, tick(4));
+            verify(service, timeout(1000)).onTick(Instrument.EURUSD, 4, 1.2, 3.4, 1.1, 5.6);
+            verify(service, times(3)).onTick(eq(Instrument.EURUSD), anyLong(), anyDouble(), anyDouble(), anyDouble(), anyDouble());
+
+        }
+
+    }
+
+}
@@ -0,0 +1,297 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.IBar;
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.IHistory;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import com.dukascopy.api.OfferSide;
+import com.dukascopy.api.Period;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.after_sunrise.dukascopy.grpc.Archive.HOUR_MILLIS;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_ARCHIVE_PATH;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_ARCHIVE_SIZE;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.BarBatch;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.DownloadRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickBatch;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class DownloaderTest {
+
+    private static final long T0 = 1590969600000L; // 2020-06-01T00:00Z
+
+    private Path directory;
+
+    private IHistory history;
+
+    private IContext context;
+
+    private Router router;
+
+    @BeforeEach
+    void setUp() throws Exception {
+
+        directory = Files.createTempDirectory(getClass().getSimpleName());
+
+        history = mock(IHistory.class);
+
+        context = mock(IContext.class);
+        when(context.getHistory()).thenReturn(history);
+        when(context.getTime()).thenReturn(T0 + HOUR_MILLIS * 3 / 2); // Second hour in progress
+
+        router = Router.of(context);
+
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> StreamObserver<T> observer() {
+        return mock(StreamObserver.class);
+    }
+
+    private static ITick tick(long time) {
+        ITick tick = mock(ITick.class);
+        when(tick.getTime()).thenReturn(time);
+        when(tick.getAsk()).thenReturn(1.2);
+        when(tick.getAskVolume()).thenReturn(3.4);
+        when(tick.getBid()).thenReturn(1.1);
+        when(tick.getBidVolume()).thenReturn(5.6);
+        return tick;
+    }
+
+    private static IBar bar(long time, double price) {
+        IBar bar = mock(IBar.class);
+        when(bar.getTime()).thenReturn(time);
+        when(bar.getOpen()).thenReturn(price);
+        when(bar.getHigh()).thenReturn(price + 0.2);
+        when(bar.getLow()).thenReturn(price - 0.1);
+        when(bar.getClose()).thenReturn(price + 0.1);
+        when(bar.getVolume()).thenReturn(10.0);
+        return bar;
+    }
+
+    private static List<Long> timestamps(ArgumentCaptor<TickBatch> captor) {
+        return captor.getAllValues().stream().flatMap(b -> b.getTicksList().stream())
+                .map(TickResponse::getTime).collect(Collectors.toList());
+    }
+
+    @Test
+    void testGetTicks() throws Exception {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_ARCHIVE_PATH, directory.toString());
+
+        List<ITick> h1 = List.of(tick(T0 + 1), tick(T0 + 2), tick(T0 + 3));
+        List<ITick> h2 = List.of(tick(T0 + HOUR_MILLIS + 1));
+        when(history.getTicks(Instrument.EURUSD, T0, T0 + HOUR_MILLIS - 1)).thenReturn(h1);
+        when(history.getTicks(Instrument.EURUSD, T0 + HOUR_MILLIS, T0 + HOUR_MILLIS * 2 - 1)).thenReturn(h2);
+
+        DownloadRequest request = DownloadRequest.newBuilder()
+                .setSymbol("EURUSD").setStartTime(T0 + 2).setEndTime(T0 + HOUR_MILLIS + 1).build();
+
+        for (int i = 0; i < 2; i++) {
+
+            Downloader target = new Downloader(Clock.systemUTC(), properties, router, Runnable::run); // Reload the index.
+
+            StreamObserver<TickBatch> observer = observer();
+            target.getTicks(request, observer);
+
+            ArgumentCaptor<TickBatch> captor = ArgumentCaptor.forClass(TickBatch.class);
+            verify(observer, times(2)).onNext(captor.capture()); // Paged by hour
+            verify(observer).onCompleted();
+            assertEquals(List.of(T0 + 2, T0 + 3, T0 + HOUR_MILLIS + 1), timestamps(captor));
+
+        }
+
+        // Completed hour from the cache, and the incomplete hour from the history.
+        verify(history, times(1)).getTicks(Instrument.EURUSD, T0, T0 + HOUR_MILLIS - 1);
+        verify(history, times(2)).getTicks(Instrument.EURUSD, T0 + HOUR_MILLIS, T0 + HOUR_MILLIS * 2 - 1);
+
+    }
+
+    @Test
+    void testGetTicks_Invalid() throws Exception {
+
+        Downloader target = new Downloader(Clock.systemUTC(), new Properties(), router, Runnable::run);
+
+        StreamObserver<TickBatch> o1 = observer();
+        target.getTicks(DownloadRequest.newBuilder().setSymbol("FOO").build(), o1);
+        verify(o1).onError(any());
+
+        // Missing end, and reversed range
+        StreamObserver<TickBatch> o2 = observer();
+        target.getTicks(DownloadRequest.newBuilder().setSymbol("EURUSD").setStartTime(T0).build(), o2);
+        verify(o2).onError(argThat(e -> Status.fromThrowable(e).getCode() == Status.Code.INVALID_ARGUMENT));
+        StreamObserver<TickBatch> o3 = observer();
+        target.getTicks(DownloadRequest.newBuilder().setSymbol("EURUSD").setStartTime(T0 + 1).setEndTime(T0).build(), o3);
+        verify(o3).onError(argThat(e -> Status.fromThrowable(e).getCode() == Status.Code.INVALID_ARGUMENT));
+
+        // End in the future, clamped to the session time.
+        StreamObserver<TickBatch> o4 = observer();
+        target.getTicks(DownloadRequest.newBuilder().setSymbol("EURUSD").setStartTime(T0).setEndTime(Long.MAX_VALUE).build(), o4);
+        verify(history, times(2)).getTicks(eq(Instrument.EURUSD), anyLong(), anyLong());
+        verify(o4).onCompleted();
+
+        router.onStop("", router.getContext(Instrument.EURUSD));
+
+        StreamObserver<TickBatch> o5 = observer();
+        target.getTicks(DownloadRequest.newBuilder().setSymbol("EURUSD").setStartTime(T0).setEndTime(T0).build(), o5);
+        verify(o5).onError(any());
+        verify(o5, never()).onCompleted();
+
+    }
+
+    @Test
+    void testGetTicks_Ready() throws Exception {
+
+        List<Runnable> tasks = new ArrayList<>();
+
+        Downloader target = new Downloader(Clock.systemUTC(), new Properties(), router, tasks::add);
+
+        @SuppressWarnings("unchecked")
+        ServerCallStreamObserver<TickBatch> observer = mock(ServerCallStreamObserver.class);
+        ArgumentCaptor<Runnable> ready = ArgumentCaptor.forClass(Runnable.class);
+
+        target.getTicks(DownloadRequest.newBuilder().setSymbol("EURUSD").setStartTime(T0).setEndTime(T0 + 1).build(), observer);
+        verify(observer).setOnReadyHandler(ready.capture());
+        assertEquals(1, tasks.size()); // Not on the calling thread.
+
+        tasks.remove(0).run();
+        verify(history, never()).getTicks(any(), anyLong(), anyLong()); // Not ready
+        assertTrue(tasks.isEmpty());
+
+        when(observer.isReady()).thenReturn(true);
+        ready.getValue().run();
+        tasks.remove(0).run();
+        verify(history).getTicks(Instrument.EURUSD, T0, T0 + HOUR_MILLIS - 1);
+        tasks.remove(0).run();
+        verify(observer).onCompleted();
+
+        // Executor shut down
+        @SuppressWarnings("unchecked")
+        ServerCallStreamObserver<TickBatch> rejected = mock(ServerCallStreamObserver.class);
+        target = new Downloader(Clock.systemUTC(), new Properties(), router, r -> {
+            throw new RejectedExecutionException("test");
+        });
+        target.getTicks(DownloadRequest.newBuilder().setSymbol("EURUSD").setStartTime(T0).setEndTime(T0 + 1).build(), rejected);
+        verify(rejected).onError(argThat(e -> Status.fromThrowable(e).getCode() == Status.Code.UNAVAILABLE));
+
+    }
+
+    @Test
+    void testArchive_Eviction() throws Exception {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_ARCHIVE_PATH, directory.toString());
+        properties.setProperty(CK_ARCHIVE_SIZE, String.valueOf(Archive.HEADER_SIZE * 2 + 40 * 3));
+
+        Archive target = new Archive(Clock.systemUTC(), properties);
+        assertTrue(target.isEnabled());
+
+        List<TickResponse> ticks = new ArrayList<>();
+        ticks.add(TickResponse.newBuilder().setTime(T0).setAskPrice(1.2).setBidSize(5.6).build());
+
+        target.write(Instrument.EURUSD, T0, ticks);
+        target.write(Instrument.EURUSD, T0 + HOUR_MILLIS, ticks);
+        assertEquals(1.2, target.read(Instrument.EURUSD, T0).get(0).getAskPrice()); // Recently used
+
+        ticks.add(ticks.get(0));
+        target.write(Instrument.USDJPY, T0, ticks); // Evicts the second hour.
+        assertNull(target.read(Instrument.EURUSD, T0 + HOUR_MILLIS));
+        assertFalse(Files.exists(target.resolve(Instrument.EURUSD, T0 + HOUR_MILLIS)));
+        assertEquals(1, target.read(Instrument.EURUSD, T0).size());
+        assertEquals(2, target.read(Instrument.USDJPY, T0).size());
+        assertEquals(5.6, target.read(Instrument.USDJPY, T0).get(1).getBidSize());
+        assertEquals(Archive.HEADER_SIZE * 2 + 40 * 3, target.getTotal());
+
+    }
+
+    @Test
+    void testGetBars() throws Exception {
+
+        long interval = Period.ONE_MIN.getInterval();
+
+        when(context.getTime()).thenReturn(T0 + interval * 2000);
+
+        List<IBar> asks = List.of(bar(T0, 1.2), bar(T0 + interval, 1.3));
+        List<IBar> bids = List.of(bar(T0 + interval, 1.1));
+        when(history.getBars(eq(Instrument.EURUSD), eq(Period.ONE_MIN), eq(OfferSide.ASK), anyLong(), anyLong())).thenReturn(asks);
+        when(history.getBars(eq(Instrument.EURUSD), eq(Period.ONE_MIN), eq(OfferSide.BID), anyLong(), anyLong())).thenReturn(bids);
+
+        Downloader target = new Downloader(Clock.systemUTC(), new Properties(), router, Runnable::run);
+
+        StreamObserver<BarBatch> observer = observer();
+        target.getBars(DownloadRequest.newBuilder().setSymbol("EURUSD")
+                .setStartTime(T0 + 1).setEndTime(T0 + interval * 1500).setIntervalMillis(interval).build(), observer);
+
+        verify(history).getBars(Instrument.EURUSD, Period.ONE_MIN, OfferSide.ASK, T0, T0 + interval * 999);
+        verify(history).getBars(Instrument.EURUSD, Period.ONE_MIN, OfferSide.ASK, T0 + interval * 1000, T0 + interval * 1500);
+
+        ArgumentCaptor<BarBatch> captor = ArgumentCaptor.forClass(BarBatch.class);
+        verify(observer, times(2)).onNext(captor.capture());
+        verify(observer).onCompleted();
+
+        BarBatch batch = captor.getAllValues().get(0);
+        assertEquals(2, batch.getBarsCount());
+        assertEquals(T0, batch.getBars(0).getTime());
+        assertEquals(1.2, batch.getBars(0).getAskOpen());
+        assertEquals(0.0, batch.getBars(0).getBidOpen()); // Ask only
+        assertEquals(1.3, batch.getBars(1).getAskOpen());
+        assertEquals(1.1, batch.getBars(1).getBidOpen());
+        assertEquals(interval, batch.getBars(1).getIntervalMillis());
+
+        // Capped at the last completed bar.
+        when(context.getTime()).thenReturn(T0 + interval * 2500 + 1);
+        target.getBars(DownloadRequest.newBuilder().setSymbol("EURUSD")
+                .setStartTime(T0 + interval * 2000).setEndTime(T0 + interval * 3000).setIntervalMillis(interval).build(), observer());
+        verify(history).getBars(Instrument.EURUSD, Period.ONE_MIN, OfferSide.ASK, T0 + interval * 2000, T0 + interval * 2499);
+
+        StreamObserver<BarBatch> invalid = observer();
+        target.getBars(DownloadRequest.newBuilder().setSymbol("EURUSD").setIntervalMillis(12345).build(), invalid);
+        verify(invalid).onError(any());
+
+    }
+
+}
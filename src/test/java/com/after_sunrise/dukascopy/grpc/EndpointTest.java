@@ -0,0 +1,52 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_CONNECTION_PATH;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class EndpointTest {
+
+    @Test
+    void testClose() throws Exception {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_CONNECTION_PATH, "127.0.0.1:0");
+
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+        try (Transport transport = new Transport(properties)) {
+
+            Router router = new Router(properties);
+
+            // Closed after bound
+            Endpoint target = new Endpoint(Clock.systemUTC(), properties, executor, Executors.defaultThreadFactory(), transport, router);
+            target.start();
+            target.start(); // Already started
+            target.close();
+            target.close(); // Already closed
+            assertThrows(IllegalStateException.class, target::start);
+
+            // Closed without bound
+            target = new Endpoint(Clock.systemUTC(), properties, executor, Executors.defaultThreadFactory(), transport, router);
+            target.close();
+            assertThrows(IllegalStateException.class, target::start);
+
+        } finally {
+
+            executor.shutdown();
+
+        }
+
+    }
+
+}
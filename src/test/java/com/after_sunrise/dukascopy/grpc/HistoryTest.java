@@ -0,0 +1,92 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.Instrument;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class HistoryTest {
+
+    @Test
+    void testGetTicks() {
+
+        History target = new History(5); // Rounded up to 7 (= 8 - 1)
+
+        assertNull(target.getLatest(Instrument.EURUSD));
+        assertEquals(List.of(), target.getTicks(Instrument.EURUSD, 0));
+
+        for (int i = 1; i <= 3; i++) {
+            target.onTick(Instrument.EURUSD, i, i + 0.1, i + 0.2, i + 0.3, i + 0.4);
+        }
+
+        assertEquals(3, target.getTicks(Instrument.EURUSD, 0).size());
+        assertEquals(2, target.getTicks(Instrument.EURUSD, 2).size());
+        assertEquals(3, target.getLatest(Instrument.EURUSD).getTime());
+        assertEquals(3.2, target.getLatest(Instrument.EURUSD).getAskSize());
+
+        for (int i = 4; i <= 20; i++) {
+            target.onTick(Instrument.EURUSD, i, i + 0.1, i + 0.2, i + 0.3, i + 0.4);
+        }
+
+        List<TickResponse> ticks = target.getTicks(Instrument.EURUSD, 100);
+        assertEquals(7, ticks.size());
+        assertEquals(14, ticks.get(0).getTime());
+        assertEquals(20, ticks.get(6).getTime());
+        assertEquals(List.of(), target.getTicks(Instrument.USDJPY, 0));
+
+    }
+
+    @Test
+    void testGetTicks_Concurrent() throws InterruptedException {
+
+        History target = new History(15);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        Thread writer = new Thread(() -> {
+            for (long i = 1; running.get(); i++) {
+                target.onTick(Instrument.EURUSD, i, i, i, i, i);
+            }
+        });
+
+        writer.start();
+
+        try {
+
+            for (int n = 0; n < 100_000; n++) {
+
+                List<TickResponse> ticks = target.getTicks(Instrument.EURUSD, 0);
+
+                for (int i = 0; i < ticks.size(); i++) {
+
+                    TickResponse t = ticks.get(i);
+
+                    assertTrue(t.getTime() == t.getAskPrice() && t.getTime() == t.getBidSize(), t::toString);
+
+                    assertTrue(i == 0 || ticks.get(i - 1).getTime() + 1 == t.getTime(), ticks::toString);
+
+                }
+
+            }
+
+        } finally {
+
+            running.set(false);
+
+            writer.join();
+
+        }
+
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.Instrument;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_JOURNAL_PATH;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_JOURNAL_SIZE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class JournalTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    private final Clock clock = Clock.fixed(Instant.ofEpochMilli(987), ZoneOffset.UTC);
+
+    @Test
+    void testDisabled() {
+
+        Journal target = new Journal(clock, new Properties());
+
+        assertFalse(target.isEnabled());
+        assertNull(target.getDirectory());
+
+        target.append(Instrument.EURUSD, 123, 1.2, 3.4, 1.1, 5.6);
+        target.close();
+
+    }
+
+    @Test
+    void testAppend(@TempDir Path directory) throws IOException {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_JOURNAL_PATH, directory.toString());
+        properties.setProperty(CK_JOURNAL_SIZE, String.valueOf(Journal.HEADER_SIZE + Journal.RECORD_SIZE * 2));
+
+        try (Journal target = new Journal(clock, properties)) {
+
+            assertTrue(target.isEnabled());
+
+            target.append(Instrument.EURUSD, 1, 1.2, 3.4, 1.1, 5.6);
+            target.append(Instrument.USDJPY, 2, 100.2, 3.4, 100.1, 5.6);
+            target.append(Instrument.EURUSD, 3, 1.3, 3.4, 1.2, 5.6); // Full
+            target.append(Instrument.EURUSD, DAY + 4, 1.4, 3.4, 1.3, 5.6); // Next day
+            target.append(Instrument.USDJPY, 5, 100.3, 3.4, 100.2, 5.6); // Late
+
+        }
+
+        List<Path> paths = Files.list(directory).sorted().collect(Collectors.toList());
+        assertEquals(3, paths.size());
+        assertEquals("19700101-0000.journal", paths.get(0).getFileName().toString());
+        assertEquals("19700101-0001.journal", paths.get(1).getFileName().toString());
+        assertEquals("19700102-0000.journal", paths.get(2).getFileName().toString());
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(paths.get(0))).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(Journal.MAGIC, buffer.getInt(0));
+        assertEquals(Journal.VERSION, buffer.getInt(4));
+        assertEquals(Journal.RECORD_SIZE, buffer.getInt(8));
+        assertEquals(2, buffer.getLong(Journal.COUNT_OFFSET));
+
+        byte[] symbol = new byte[Journal.SYMBOL_SIZE];
+        buffer.position(Journal.HEADER_SIZE + Journal.RECORD_SIZE);
+        buffer.get(symbol);
+        assertEquals("USDJPY", new String(symbol, StandardCharsets.US_ASCII).trim());
+        assertEquals(2, buffer.getLong());
+        assertEquals(100.2, buffer.getDouble());
+        assertEquals(3.4, buffer.getDouble());
+        assertEquals(100.1, buffer.getDouble());
+        assertEquals(5.6, buffer.getDouble());
+        assertEquals(987, buffer.getLong());
+
+        buffer = ByteBuffer.wrap(Files.readAllBytes(paths.get(1))).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(1, buffer.getLong(Journal.COUNT_OFFSET));
+        assertEquals(3, buffer.getLong(Journal.HEADER_SIZE + Journal.SYMBOL_SIZE));
+
+        buffer = ByteBuffer.wrap(Files.readAllBytes(paths.get(2))).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(2, buffer.getLong(Journal.COUNT_OFFSET));
+        assertEquals(DAY + 4, buffer.getLong(Journal.HEADER_SIZE + Journal.SYMBOL_SIZE));
+        assertEquals(5, buffer.getLong(Journal.HEADER_SIZE + Journal.RECORD_SIZE + Journal.SYMBOL_SIZE));
+
+    }
+
+}
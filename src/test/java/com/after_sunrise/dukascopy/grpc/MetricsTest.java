@@ -0,0 +1,54 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.Instrument;
+import io.prometheus.client.CollectorRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class MetricsTest {
+
+    private static double sample(String name, String... labels) {
+
+        String[] names = labels.length == 0 ? new String[0] : new String[]{"symbol"};
+
+        Double value = CollectorRegistry.defaultRegistry.getSampleValue(name, names, labels);
+
+        return Optional.ofNullable(value).orElse(0.0);
+
+    }
+
+    @Test
+    void testMetrics() {
+
+        Metrics target = Metrics.of(Instrument.AUDUSD);
+        assertSame(target, Metrics.of(Instrument.AUDUSD));
+
+        double received = sample("dukas_grpc_ticks_received_total", "AUDUSD");
+        double sent = sample("dukas_grpc_ticks_sent_total", "AUDUSD");
+        double failures = sample("dukas_grpc_send_failures_total", "AUDUSD");
+        double fanout = sample("dukas_grpc_fanout_seconds_count");
+        double latency = sample("dukas_grpc_tick_latency_seconds_sum");
+
+        target.onReceived();
+        target.onSent(3, 2000, 1500);
+        target.onFailure();
+        target.onListeners(4);
+
+        assertEquals(received + 1, sample("dukas_grpc_ticks_received_total", "AUDUSD"));
+        assertEquals(sent + 3, sample("dukas_grpc_ticks_sent_total", "AUDUSD"));
+        assertEquals(failures + 1, sample("dukas_grpc_send_failures_total", "AUDUSD"));
+        assertEquals(fanout + 1, sample("dukas_grpc_fanout_seconds_count"));
+        assertEquals(latency + 1.5, sample("dukas_grpc_tick_latency_seconds_sum"), 1e-9);
+        assertEquals(4, sample("dukas_grpc_listeners", "AUDUSD"));
+
+    }
+
+}
@@ -0,0 +1,177 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.Instrument;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_JOURNAL_PATH;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_JOURNAL_SIZE;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class ReplayerTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000;
+
+    private final Clock clock = mock(Clock.class);
+
+    private final ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+
+    private void record(Path directory) {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_JOURNAL_PATH, directory.toString());
+        properties.setProperty(CK_JOURNAL_SIZE, String.valueOf(Journal.HEADER_SIZE + Journal.RECORD_SIZE * 3));
+
+        try (Journal journal = new Journal(clock, properties)) {
+            journal.append(Instrument.EURUSD, 1000, 1.2, 3.4, 1.1, 5.6);
+            journal.append(Instrument.USDJPY, 1500, 100.2, 3.4, 100.1, 5.6);
+            journal.append(Instrument.EURUSD, 2000, 1.3, 3.4, 1.2, 5.6);
+            journal.append(Instrument.EURUSD, 3000, 1.4, 3.4, 1.3, 5.6); // Rolled by size
+            journal.append(Instrument.EURUSD, DAY + 4000, 1.5, 3.4, 1.4, 5.6); // Rolled by day
+            journal.append(Instrument.USDJPY, 1700, 100.3, 3.4, 100.2, 5.6); // Late
+        }
+
+    }
+
+    @Test
+    void testRun(@TempDir Path directory) {
+
+        record(directory);
+
+        @SuppressWarnings("unchecked")
+        StreamObserver<TickResponse> observer = mock(StreamObserver.class);
+
+        Replayer target = new Replayer(clock, executor, observer, List.of(Instrument.EURUSD), 1500, 0, 0);
+        target.start(directory);
+        verify(executor).execute(target);
+
+        target.run();
+
+        ArgumentCaptor<TickResponse> captor = ArgumentCaptor.forClass(TickResponse.class);
+        verify(observer, times(3)).onNext(captor.capture());
+        verify(observer).onCompleted();
+        assertEquals(2000, captor.getAllValues().get(0).getTime());
+        assertEquals(3000, captor.getAllValues().get(1).getTime());
+        assertEquals(DAY + 4000, captor.getAllValues().get(2).getTime());
+        assertEquals("EURUSD", captor.getAllValues().get(2).getSymbol());
+        assertEquals(1.5, captor.getAllValues().get(2).getAskPrice());
+        assertEquals(1.4, captor.getAllValues().get(2).getBidPrice());
+
+    }
+
+    @Test
+    void testRun_Ready(@TempDir Path directory) {
+
+        record(directory);
+
+        @SuppressWarnings("unchecked")
+        ServerCallStreamObserver<TickResponse> observer = mock(ServerCallStreamObserver.class);
+
+        Replayer target = new Replayer(clock, executor, observer, List.of(Instrument.EURUSD), 1500, 0, 0);
+        target.start(directory);
+
+        ArgumentCaptor<Runnable> ready = ArgumentCaptor.forClass(Runnable.class);
+        verify(observer).setOnReadyHandler(ready.capture());
+        verify(executor).execute(target);
+
+        // Not ready : Paused without rescheduling.
+        target.run();
+        verify(observer, never()).onNext(any());
+        verify(executor, times(1)).execute(target);
+
+        // Ready : Resumed by the handler.
+        when(observer.isReady()).thenReturn(true);
+        ready.getValue().run();
+        verify(executor, times(2)).execute(target);
+        target.run();
+        verify(observer, times(3)).onNext(any());
+        verify(observer).onCompleted();
+
+    }
+
+    @Test
+    void testRun_Failure(@TempDir Path directory) {
+
+        @SuppressWarnings("unchecked")
+        StreamObserver<TickResponse> observer = mock(StreamObserver.class);
+
+        Replayer target = new Replayer(clock, executor, observer, List.of(Instrument.EURUSD), 0, 0, 0);
+        target.start(directory.resolve("missing")); // Not listed on the calling thread.
+        verify(observer, never()).onError(any());
+
+        target.run();
+        verify(observer).onError(any());
+        verify(observer, never()).onCompleted();
+
+        // Executor shut down
+        @SuppressWarnings("unchecked")
+        StreamObserver<TickResponse> rejected = mock(StreamObserver.class);
+        doThrow(new RejectedExecutionException("test")).when(executor).execute(any());
+        new Replayer(clock, executor, rejected, List.of(Instrument.EURUSD), 0, 0, 0).start(directory);
+        verify(rejected).onError(argThat(e -> Status.fromThrowable(e).getCode() == Status.Code.UNAVAILABLE));
+
+    }
+
+    @Test
+    void testRun_Paced(@TempDir Path directory) {
+
+        record(directory);
+
+        @SuppressWarnings("unchecked")
+        StreamObserver<TickResponse> observer = mock(StreamObserver.class);
+
+        Replayer target = new Replayer(clock, executor, observer, List.of(Instrument.EURUSD, Instrument.USDJPY), 0, DAY, 10);
+        target.start(directory);
+
+        when(clock.millis()).thenReturn(50000L);
+        target.run(); // 1000
+        verify(executor).schedule(target, 50, MILLISECONDS);
+
+        when(clock.millis()).thenReturn(50050L);
+        target.run(); // 1500
+        verify(executor, times(2)).schedule(target, 50, MILLISECONDS);
+
+        when(clock.millis()).thenReturn(50300L);
+        target.run(); // 2000, 3000, 1700 (Late one in the segment of day 2, which is otherwise out of range.)
+
+        InOrder order = inOrder(observer);
+        order.verify(observer).onNext(TickResponse.newBuilder().setSymbol("EURUSD").setTime(1000)
+                .setAskPrice(1.2).setAskSize(3.4).setBidPrice(1.1).setBidSize(5.6).build());
+        order.verify(observer).onNext(TickResponse.newBuilder().setSymbol("USDJPY").setTime(1500)
+                .setAskPrice(100.2).setAskSize(3.4).setBidPrice(100.1).setBidSize(5.6).build());
+        order.verify(observer, times(3)).onNext(any());
+        order.verify(observer).onCompleted();
+        verify(observer).onNext(TickResponse.newBuilder().setSymbol("USDJPY").setTime(1700)
+                .setAskPrice(100.3).setAskSize(3.4).setBidPrice(100.2).setBidSize(5.6).build());
+        verify(observer, never()).onError(any());
+
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.Instrument;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_SESSIONS;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_SESSION_STANDBY;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_SESSION_SYMBOLS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class RouterTest {
+
+    @Test
+    void testDefault() {
+
+        IContext context = mock(IContext.class);
+
+        Router target = Router.of(context);
+        assertEquals(List.of(""), target.getSessions());
+        assertEquals("", target.getSession(Instrument.EURUSD));
+        assertSame(context, target.getContext(Instrument.EURUSD));
+        assertEquals(Map.of("", context), target.getContexts());
+
+    }
+
+    @Test
+    void testApply() {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_SESSIONS, "a, b,c");
+        properties.setProperty(CK_SESSION_SYMBOLS + ".a", "EURUSD,USDJPY");
+        properties.setProperty(CK_SESSION_SYMBOLS + ".c", "GBPUSD");
+
+        Router target = new Router(properties);
+        assertEquals(List.of("a", "b", "c"), target.getSessions());
+        assertEquals("a", target.getSession(Instrument.EURUSD));
+        assertEquals("a", target.getSession(Instrument.USDJPY));
+        assertEquals("c", target.getSession(Instrument.GBPUSD));
+        assertEquals("b", target.getSession(Instrument.AUDUSD)); // Default
+        assertNull(target.getContext(Instrument.EURUSD));
+
+        IContext a = mock(IContext.class);
+        IContext c = mock(IContext.class);
+        when(a.getSubscribedInstruments()).thenReturn(Set.of(Instrument.EURUSD, Instrument.EURJPY));
+        when(c.getSubscribedInstruments()).thenReturn(Set.of());
+
+        target.onStart("a", a);
+        target.onStart("c", c);
+        assertEquals(List.of("a", "c"), List.copyOf(target.getContexts().keySet()));
+
+        target.apply(Set.of(Instrument.USDJPY, Instrument.GBPUSD, Instrument.AUDUSD));
+        verify(a).unsubscribeInstruments(Set.of(Instrument.EURUSD, Instrument.EURJPY));
+        verify(a).setSubscribedInstruments(Set.of(Instrument.USDJPY));
+        verify(c).unsubscribeInstruments(Set.of());
+        verify(c).setSubscribedInstruments(Set.of(Instrument.GBPUSD));
+
+        IContext other = mock(IContext.class);
+        target.onStop("a", other); // Not the current one
+        assertSame(a, target.getContext(Instrument.USDJPY));
+
+        target.onStop("a", a);
+        assertNull(target.getContext(Instrument.USDJPY));
+        verifyNoInteractions(other);
+
+    }
+
+    @Test
+    void testStandby() {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_SESSIONS, "a,b");
+        properties.setProperty(CK_SESSION_STANDBY + ".b", "a");
+
+        Router target = new Router(properties);
+        assertTrue(target.isRedundant());
+        assertEquals("a", target.getSession(Instrument.EURUSD));
+
+        IContext a = mock(IContext.class);
+        IContext b = mock(IContext.class);
+        when(a.getSubscribedInstruments()).thenReturn(Set.of());
+        when(b.getSubscribedInstruments()).thenReturn(Set.of());
+
+        target.onStart("a", a);
+        target.onStart("b", b);
+        assertSame(a, target.getContext(Instrument.EURUSD));
+
+        target.apply(Set.of(Instrument.EURUSD));
+        verify(a).setSubscribedInstruments(Set.of(Instrument.EURUSD));
+        verify(b).setSubscribedInstruments(Set.of(Instrument.EURUSD)); // Mirrored
+
+        target.onStop("a", a);
+        assertSame(b, target.getContext(Instrument.EURUSD)); // Failover
+
+        target.onStop("b", b);
+        assertNull(target.getContext(Instrument.EURUSD));
+
+        properties.setProperty(CK_SESSION_STANDBY + ".b", "c");
+        assertThrows(IllegalArgumentException.class, () -> new Router(properties));
+
+        properties.setProperty(CK_SESSION_STANDBY + ".a", "b");
+        properties.setProperty(CK_SESSION_STANDBY + ".b", "a");
+        assertThrows(IllegalArgumentException.class, () -> new Router(properties));
+
+    }
+
+    @Test
+    void testUnknownSymbol() {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_SESSIONS, "a");
+        properties.setProperty(CK_SESSION_SYMBOLS + ".a", "FOOBAR");
+
+        assertThrows(IllegalArgumentException.class, () -> new Router(properties));
+
+    }
+
+}
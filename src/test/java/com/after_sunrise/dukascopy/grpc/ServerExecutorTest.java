@@ -0,0 +1,48 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class ServerExecutorTest {
+
+    private final ScheduledExecutorService shared = mock(ScheduledExecutorService.class);
+
+    private final ThreadFactory factory = Executors.defaultThreadFactory();
+
+    @Test
+    void testCreate() {
+
+        assertSame(shared, ServerExecutor.SHARED.create(shared, factory, 2));
+
+        assertSame(MoreExecutors.directExecutor(), ServerExecutor.DIRECT.create(shared, factory, 2));
+
+        for (ServerExecutor type : new ServerExecutor[]{ServerExecutor.POOL, ServerExecutor.VIRTUAL}) {
+
+            Executor executor = type.create(shared, factory, 0);
+
+            assertNotSame(shared, executor);
+
+            assertTrue(executor instanceof ExecutorService, type.name());
+
+            ((ExecutorService) executor).shutdown();
+
+        }
+
+    }
+
+}
@@ -0,0 +1,623 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import com.after_sunrise.dukascopy.grpc.proto.DukascopyEndpointGrpc;
+import com.dukascopy.api.IContext;
+import com.dukascopy.api.ITick;
+import com.dukascopy.api.Instrument;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.stub.StreamObserver;
+import io.prometheus.client.CollectorRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.lang.management.ManagementFactory;
+import java.time.Clock;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.stream.Collectors;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_BATCH_SIZE;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_BATCH_WINDOW;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_DISPATCH_CAPACITY;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_HISTORY_SIZE;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_SESSIONS;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_SESSION_STANDBY;
+import static com.after_sunrise.dukascopy.grpc.Config.CV_SESSIONS;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.BarRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.BarResponse;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.DepthRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.DepthResponse;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.HistoryRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.HistoryResponse;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickBatch;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.ManageRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickRequest;
+import static com.after_sunrise.dukascopy.grpc.proto.DukascopyProto.TickResponse;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class ServiceTest {
+
+    private ScheduledExecutorService executor;
+
+    private IContext context;
+
+    private Service target;
+
+    @BeforeEach
+    void setUp() {
+
+        context = mock(IContext.class);
+
+        when(context.getSubscribedInstruments()).thenReturn(Set.of());
+
+        executor = mock(ScheduledExecutorService.class);
+
+        target = new Service(Clock.systemUTC(), new Properties(), executor, context);
+
+    }
+
+    @SuppressWarnings("unchecked")
+    private static StreamObserver<TickResponse> observer() {
+        return mock(StreamObserver.class);
+    }
+
+    private static TickRequest request(String... symbols) {
+        return TickRequest.newBuilder().addAllSymbols(List.of(symbols)).build();
+    }
+
+    private List<StreamObserver<TickResponse>> subscribers(Instrument instrument) {
+        return target.getSubscribers(instrument).stream().map(o -> ((Conflator) o).getDelegate()).collect(Collectors.toList());
+    }
+
+    @Test
+    void testCreateServiceDefinition() throws Exception {
+
+        ServerServiceDefinition definition = target.createServiceDefinition();
+
+        MethodDescriptor<?, ?> status = definition.getMethod(
+                DukascopyEndpointGrpc.getStatusMethod().getFullMethodName()).getMethodDescriptor();
+        assertSame(DukascopyEndpointGrpc.getStatusMethod(), status);
+
+        @SuppressWarnings("unchecked")
+        MethodDescriptor<TickRequest, TickResponse> subscribe = (MethodDescriptor<TickRequest, TickResponse>) definition.getMethod(
+                DukascopyEndpointGrpc.getSubscribeMethod().getFullMethodName()).getMethodDescriptor();
+        assertTrue(subscribe.getResponseMarshaller() instanceof TickMarshaller);
+
+        MethodDescriptor<?, ?> manage = definition.getMethod(
+                DukascopyEndpointGrpc.getManageMethod().getFullMethodName()).getMethodDescriptor();
+        assertSame(subscribe.getResponseMarshaller(), manage.getResponseMarshaller());
+
+        TickResponse response = TickResponse.newBuilder().setSymbol("EURUSD").setTime(123).setAskPrice(1.2).build();
+        byte[] b1 = subscribe.streamResponse(response).readAllBytes();
+        byte[] b2 = subscribe.streamResponse(response).readAllBytes();
+        assertArrayEquals(response.toByteArray(), b1);
+        assertArrayEquals(response.toByteArray(), b2);
+        assertEquals(response, subscribe.parseResponse(subscribe.streamResponse(response)));
+
+    }
+
+    @Test
+    void testSubscribers() {
+
+        ArgumentCaptor<Runnable> adjust = ArgumentCaptor.forClass(Runnable.class);
+
+        StreamObserver<TickResponse> o1 = observer();
+        StreamObserver<TickResponse> o2 = observer();
+        StreamObserver<TickResponse> o3 = observer();
+
+        // Register
+        target.subscribe(request("EURUSD", "USDJPY"), o1);
+        target.subscribe(request("USDJPY"), o2);
+        target.subscribe(request("EURUSD"), o3);
+        assertEquals(List.of(o1, o3), subscribers(Instrument.EURUSD));
+        assertEquals(List.of(o1, o2), subscribers(Instrument.USDJPY));
+        assertEquals(List.of(), subscribers(Instrument.GBPUSD));
+        verify(context, never()).setSubscribedInstruments(any());
+        verify(executor).schedule(adjust.capture(), eq(100L), eq(MILLISECONDS)); // Coalesced
+        adjust.getValue().run();
+        verify(context).setSubscribedInstruments(Set.of(Instrument.EURUSD, Instrument.USDJPY));
+
+        // Deliver only to the instrument's subscribers.
+        ITick tick = mock(ITick.class);
+        target.onTick(Instrument.USDJPY, tick);
+        verify(o1).onNext(any());
+        verify(o2).onNext(any());
+        verify(o3, never()).onNext(any());
+
+        // Error removal
+        doThrow(new IllegalStateException("test")).when(o1).onNext(any());
+        target.onTick(Instrument.EURUSD, tick);
+        verify(o1).onError(any());
+        verify(o3).onNext(any());
+        assertEquals(List.of(o3), subscribers(Instrument.EURUSD));
+        assertEquals(List.of(o2), subscribers(Instrument.USDJPY));
+        verify(executor, times(2)).schedule(adjust.capture(), eq(100L), eq(MILLISECONDS));
+        adjust.getValue().run(); // Instruments are still referenced by the others.
+        verify(context, times(1)).setSubscribedInstruments(any());
+
+        // Shutdown
+        target.onShutdown();
+        verify(o1, never()).onCompleted();
+        verify(o2).onCompleted();
+        verify(o3).onCompleted();
+        assertEquals(List.of(), subscribers(Instrument.EURUSD));
+        assertEquals(List.of(), subscribers(Instrument.USDJPY));
+        verify(context).setSubscribedInstruments(Set.of());
+
+    }
+
+    @Test
+    void testManage() {
+
+        ArgumentCaptor<Runnable> adjust = ArgumentCaptor.forClass(Runnable.class);
+
+        StreamObserver<TickResponse> o1 = observer();
+        StreamObserver<TickResponse> o2 = observer();
+        StreamObserver<ManageRequest> r1 = target.manage(o1);
+        StreamObserver<ManageRequest> r2 = target.manage(o2);
+
+        // Add
+        target.onTick(Instrument.EURUSD, 1L, 1.2, 3.4, 1.1, 5.6);
+        r1.onNext(ManageRequest.newBuilder().addAdd("EURUSD").addAdd("USDJPY").build());
+        r2.onNext(ManageRequest.newBuilder().addAdd("USDJPY").build());
+        verify(o1).onNext(argThat(r -> r.getTime() == 1L)); // Latest
+        assertEquals(List.of(o1), subscribers(Instrument.EURUSD));
+        assertEquals(List.of(o1, o2), subscribers(Instrument.USDJPY));
+
+        // Add and remove, while keeping the stream.
+        r1.onNext(ManageRequest.newBuilder().addAdd("EURUSD").addAdd("GBPUSD").addRemove("USDJPY").build());
+        verify(o1, times(1)).onNext(any()); // Latest not repeated for the unchanged.
+        assertEquals(List.of(o1), subscribers(Instrument.EURUSD));
+        assertEquals(List.of(o2), subscribers(Instrument.USDJPY));
+        assertEquals(List.of(o1), subscribers(Instrument.GBPUSD));
+        target.onTick(Instrument.EURUSD, 2L, 1.2, 3.4, 1.1, 5.6);
+        verify(o1).onNext(argThat(r -> r.getTime() == 2L));
+        verify(executor).schedule(adjust.capture(), eq(100L), eq(MILLISECONDS)); // Coalesced
+        adjust.getValue().run();
+        verify(context).setSubscribedInstruments(Set.of(Instrument.EURUSD, Instrument.USDJPY, Instrument.GBPUSD));
+
+        // Invalid
+        r1.onNext(ManageRequest.newBuilder().addAdd("FOO").build());
+        verify(o1).onError(any());
+        assertEquals(List.of(), subscribers(Instrument.EURUSD));
+        assertEquals(List.of(), subscribers(Instrument.GBPUSD));
+        r1.onNext(ManageRequest.newBuilder().addAdd("EURUSD").build()); // Ignored
+        assertEquals(List.of(), subscribers(Instrument.EURUSD));
+
+        // Completion
+        r2.onCompleted();
+        verify(o2).onCompleted();
+        assertEquals(List.of(), subscribers(Instrument.USDJPY));
+        verify(executor, times(2)).schedule(adjust.capture(), eq(100L), eq(MILLISECONDS));
+        adjust.getValue().run();
+        verify(context).setSubscribedInstruments(Set.of());
+
+    }
+
+    @Test
+    void testOnTick_Redundant() {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_SESSIONS, "a,b");
+        properties.setProperty(CK_SESSION_STANDBY + ".b", "a");
+
+        Router router = new Router(properties);
+        router.onStart("a", context);
+        router.onStart("b", context);
+
+        target = new Service(Clock.systemUTC(), properties, executor, Executors.defaultThreadFactory(), router);
+
+        StreamObserver<TickResponse> o = observer();
+        target.subscribe(request("EURUSD"), o);
+
+        double dropped = Optional.ofNullable(CollectorRegistry.defaultRegistry.getSampleValue(
+                "dukas_grpc_ticks_dropped_total", new String[]{"symbol"}, new String[]{"EURUSD"})).orElse(0.0);
+        target.onTick(Instrument.EURUSD, 1000L, 1.2, 1.0, 1.1, 2.0); // Primary
+        target.onTick(Instrument.EURUSD, 1000L, 1.3, 1.0, 1.1, 2.0); // Primary, within the same millisecond
+        target.onTick(Instrument.EURUSD, 1000L, 1.2, 1.0, 1.1, 2.0); // Standby
+        target.onTick(Instrument.EURUSD, 1000L, 1.3, 1.0, 1.1, 2.0); // Standby
+        target.onTick(Instrument.EURUSD, 999L, 1.2, 1.0, 1.1, 2.0); // Late
+        target.onTick(Instrument.USDJPY, 999L, 1.2, 1.0, 1.1, 2.0); // Other instrument
+        target.onTick(Instrument.EURUSD, 1001L, 1.2, 1.0, 1.1, 2.0);
+        verify(o, times(3)).onNext(any());
+        verify(o).onNext(argThat(r -> r.getTime() == 1000L && r.getAskPrice() == 1.2));
+        verify(o).onNext(argThat(r -> r.getTime() == 1000L && r.getAskPrice() == 1.3));
+        verify(o).onNext(argThat(r -> r.getTime() == 1001L));
+        assertEquals(dropped + 3, CollectorRegistry.defaultRegistry.getSampleValue(
+                "dukas_grpc_ticks_dropped_total", new String[]{"symbol"}, new String[]{"EURUSD"}));
+
+    }
+
+    @Test
+    void testOnDepth_Redundant() {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_SESSIONS, "a,b");
+        properties.setProperty(CK_SESSION_STANDBY + ".b", "a");
+        properties.setProperty(CK_DISPATCH_CAPACITY, "0");
+
+        Router router = new Router(properties);
+        router.onStart("a", context);
+        router.onStart("b", context);
+
+        target = new Service(Clock.systemUTC(), properties, executor, Executors.defaultThreadFactory(), router);
+
+        @SuppressWarnings("unchecked")
+        StreamObserver<DepthResponse> o = mock(StreamObserver.class);
+        target.subscribeDepth(DepthRequest.newBuilder().addSymbols("EURUSD").build(), o);
+
+        ITick t1 = depthTick(1000L, 1.2);
+        ITick t2 = depthTick(1000L, 1.3); // Within the same millisecond
+
+        try (Dispatcher primary = new Dispatcher(properties, null, target);
+             Dispatcher standby = new Dispatcher(properties, null, target)) {
+
+            primary.onTick(Instrument.EURUSD, t1);
+            primary.onTick(Instrument.EURUSD, t2);
+            verify(o).onNext(argThat(r -> r.getSnapshot() && r.getAsks(0).getPrice() == 1.2));
+            verify(o).onNext(argThat(r -> !r.getSnapshot() && r.getAsksCount() == 2));
+
+            standby.onTick(Instrument.EURUSD, t1); // Copy of the earlier tick
+            standby.onTick(Instrument.EURUSD, t2);
+            verify(o, times(2)).onNext(any());
+
+        }
+
+    }
+
+    private static ITick depthTick(long time, double ask) {
+        ITick tick = mock(ITick.class);
+        when(tick.getTime()).thenReturn(time);
+        when(tick.getAsk()).thenReturn(ask);
+        when(tick.getAskVolume()).thenReturn(1.0);
+        when(tick.getBid()).thenReturn(1.1);
+        when(tick.getBidVolume()).thenReturn(2.0);
+        when(tick.getAsks()).thenReturn(new double[]{ask});
+        when(tick.getAskVolumes()).thenReturn(new double[]{1.0});
+        when(tick.getBids()).thenReturn(new double[]{1.1});
+        when(tick.getBidVolumes()).thenReturn(new double[]{2.0});
+        return tick;
+    }
+
+    @Test
+    void testMarkStale() {
+
+        Router router = Router.of(context);
+
+        target = new Service(Clock.systemUTC(), new Properties(), executor, Executors.defaultThreadFactory(), router);
+
+        StreamObserver<TickResponse> o1 = observer();
+        StreamObserver<TickResponse> o2 = observer();
+        target.subscribe(request("EURUSD"), o1);
+        target.subscribe(request("USDJPY"), o2);
+        target.onTick(Instrument.EURUSD, 1000L, 1.2, 1.0, 1.1, 2.0);
+
+        target.markStale(); // Session running
+        verify(o1, times(1)).onNext(any());
+        verify(o2, never()).onNext(any());
+
+        router.onStop(CV_SESSIONS, context);
+        target.markStale();
+        verify(o1).onNext(argThat(r -> r.getStale() && r.getTime() == 1000L && r.getAskPrice() == 1.2));
+        verify(o2).onNext(argThat(r -> r.getStale() && r.getSymbol().equals("USDJPY")));
+        verify(o1, never()).onCompleted();
+        verify(o2, never()).onCompleted();
+
+        router.onStart(CV_SESSIONS, context);
+        target.onTick(Instrument.EURUSD, 1001L, 1.2, 1.0, 1.1, 2.0);
+        verify(o1).onNext(argThat(r -> !r.getStale() && r.getTime() == 1001L));
+
+    }
+
+    @Test
+    void testSubscribeDepth() {
+
+        @SuppressWarnings("unchecked")
+        StreamObserver<DepthResponse> o1 = mock(StreamObserver.class);
+        @SuppressWarnings("unchecked")
+        StreamObserver<DepthResponse> o2 = mock(StreamObserver.class);
+
+        Depth d1 = BookTest.depth(10, new double[]{1.3}, new double[]{1}, new double[]{1.2}, new double[]{2});
+        Depth d2 = BookTest.depth(10, new double[]{1.3}, new double[]{3}, new double[]{1.2}, new double[]{2});
+
+        target.onDepth(Instrument.EURUSD, 1000L, d1); // No listeners
+
+        target.subscribeDepth(DepthRequest.newBuilder().addSymbols("EURUSD").build(), o1);
+        target.onDepth(Instrument.EURUSD, 1001L, d1);
+        verify(o1).onNext(argThat(r -> r.getSnapshot() && r.getAsksCount() == 1 && r.getBidsCount() == 1));
+
+        target.subscribeDepth(DepthRequest.newBuilder().addSymbols("EURUSD").build(), o2);
+        target.onDepth(Instrument.EURUSD, 1002L, d2);
+        verify(o1).onNext(argThat(r -> !r.getSnapshot() && r.getAsks(0).getSize() == 3 && r.getBidsCount() == 0));
+        verify(o2).onNext(argThat(r -> r.getSnapshot() && r.getAsks(0).getSize() == 3));
+        verify(o2, times(1)).onNext(any());
+
+        // Error removal
+        doThrow(new IllegalStateException("test")).when(o1).onNext(any());
+        target.onDepth(Instrument.EURUSD, 1003L, d1);
+        verify(o1).onError(any());
+        verify(o2, times(2)).onNext(any());
+
+        // Invalid
+        @SuppressWarnings("unchecked")
+        StreamObserver<DepthResponse> o3 = mock(StreamObserver.class);
+        target.subscribeDepth(DepthRequest.newBuilder().addSymbols("FOO").build(), o3);
+        verify(o3).onError(any());
+
+        target.onShutdown();
+        verify(o2).onCompleted();
+        verify(o1, never()).onCompleted();
+
+    }
+
+    @Test
+    void testSubscribe_Throttled() {
+
+        ScheduledFuture<?> future = mock(ScheduledFuture.class);
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        doReturn(future).when(executor).scheduleAtFixedRate(captor.capture(), eq(100L), eq(100L), eq(MILLISECONDS));
+
+        StreamObserver<TickResponse> o1 = observer();
+        StreamObserver<TickResponse> o2 = observer();
+        target.subscribe(request("EURUSD").toBuilder().setMinIntervalMillis(100).build(), o1);
+        target.subscribe(request("EURUSD").toBuilder().setMinIntervalMillis(100).build(), o2);
+        verify(executor).scheduleAtFixedRate(any(), eq(100L), eq(100L), eq(MILLISECONDS)); // Shared per interval
+
+        target.onTick(Instrument.EURUSD, 1L, 1.2, 3.4, 1.1, 5.6);
+        target.onTick(Instrument.EURUSD, 2L, 1.3, 3.4, 1.1, 5.6);
+        verify(o1, never()).onNext(any());
+        verify(o2, never()).onNext(any());
+
+        captor.getValue().run();
+        verify(o1).onNext(argThat(r -> r.getTime() == 2L));
+        verify(o2).onNext(argThat(r -> r.getTime() == 2L));
+
+        captor.getValue().run();
+        verify(o1, times(1)).onNext(any());
+        verify(o2, times(1)).onNext(any());
+
+        target.onShutdown();
+        verify(future).cancel(false);
+
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSubscribeBatch() {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_BATCH_SIZE, "2");
+        properties.setProperty(CK_BATCH_WINDOW, "500");
+        target = new Service(Clock.systemUTC(), properties, executor, context);
+
+        ScheduledFuture<?> future = mock(ScheduledFuture.class);
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        doReturn(future).when(executor).schedule(captor.capture(), eq(500L), eq(MICROSECONDS));
+
+        StreamObserver<TickBatch> o1 = mock(StreamObserver.class);
+        target.subscribeBatch(request("EURUSD", "USDJPY"), o1);
+
+        // Size
+        target.onTick(Instrument.EURUSD, 1L, 1.2, 3.4, 1.1, 5.6);
+        target.onTick(Instrument.USDJPY, 2L, 1.3, 3.4, 1.1, 5.6);
+        verify(o1).onNext(argThat(b -> b.getTicksCount() == 2
+                && b.getTicks(0).getSymbol().equals("EURUSD") && b.getTicks(1).getSymbol().equals("USDJPY")));
+        verify(future).cancel(false);
+
+        // Window
+        target.onTick(Instrument.EURUSD, 3L, 1.2, 3.4, 1.1, 5.6);
+        verify(o1, times(1)).onNext(any());
+        captor.getValue().run();
+        verify(o1).onNext(argThat(b -> b.getTicksCount() == 1 && b.getTicks(0).getTime() == 3L));
+
+        target.onShutdown();
+        verify(o1).onCompleted();
+        verify(o1, times(2)).onNext(any());
+
+        // Timer flush failure
+        StreamObserver<TickBatch> o2 = mock(StreamObserver.class);
+        target.subscribeBatch(request("EURUSD"), o2);
+        doThrow(new IllegalStateException("test")).when(o2).onNext(any());
+        target.onTick(Instrument.EURUSD, 4L, 1.2, 3.4, 1.1, 5.6);
+        captor.getValue().run();
+        verify(o2).onError(any());
+        assertEquals(List.of(), target.getSubscribers(Instrument.EURUSD));
+
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testHistory() {
+
+        Properties properties = new Properties();
+        properties.setProperty(CK_HISTORY_SIZE, "2"); // Rounded up to 3 (= 4 - 1)
+        target = new Service(Clock.systemUTC(), properties, executor, context);
+
+        for (int i = 1; i <= 10; i++) {
+            target.onTick(Instrument.EURUSD, i, 1.2, 3.4, 1.1, 5.6);
+        }
+        target.onTick(Instrument.USDJPY, 99, 107.2, 3.4, 107.1, 5.6);
+
+        // History
+        StreamObserver<HistoryResponse> h = mock(StreamObserver.class);
+        target.history(HistoryRequest.newBuilder().addSymbols("EURUSD").addSymbols("USDJPY").setCount(2).build(), h);
+        verify(h).onNext(argThat(r -> r.getTicksCount() == 3
+                && r.getTicks(0).getTime() == 9 && r.getTicks(1).getTime() == 10 && r.getTicks(2).getTime() == 99));
+        verify(h).onCompleted();
+
+        StreamObserver<HistoryResponse> a = mock(StreamObserver.class);
+        target.history(HistoryRequest.newBuilder().addSymbols("EURUSD").build(), a);
+        verify(a).onNext(argThat(r -> r.getTicksCount() == 3 && r.getTicks(0).getTime() == 8 && r.getTicks(2).getTime() == 10));
+
+        StreamObserver<HistoryResponse> e = mock(StreamObserver.class);
+        target.history(HistoryRequest.newBuilder().addSymbols("FOOBAR").build(), e);
+        verify(e).onError(any());
+
+        // Snapshot
+        StreamObserver<TickResponse> o1 = observer();
+        target.subscribe(request("EURUSD", "GBPUSD"), o1);
+        verify(o1).onNext(argThat(r -> r.getSymbol().equals("EURUSD") && r.getTime() == 10 && r.getAskPrice() == 1.2));
+        verify(o1, times(1)).onNext(any());
+
+        target.onTick(Instrument.EURUSD, 11, 1.2, 3.4, 1.1, 5.6);
+        verify(o1).onNext(argThat(r -> r.getTime() == 11));
+
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testSubscribeBars() {
+
+        Clock clock = mock(Clock.class);
+        when(clock.millis()).thenReturn(1234L);
+        target = new Service(clock, new Properties(), executor, context);
+
+        ScheduledFuture<?> future = mock(ScheduledFuture.class);
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        doReturn(future).when(executor).scheduleAtFixedRate(captor.capture(), eq(1016L), eq(1000L), eq(MILLISECONDS));
+
+        StreamObserver<BarResponse> o1 = mock(StreamObserver.class);
+        StreamObserver<BarResponse> o2 = mock(StreamObserver.class);
+        StreamObserver<BarResponse> o3 = mock(StreamObserver.class);
+        target.subscribeBars(BarRequest.newBuilder().addSymbols("EURUSD").setIntervalMillis(1000).build(), o1);
+        target.subscribeBars(BarRequest.newBuilder().addSymbols("EURUSD").setIntervalMillis(1000).build(), o2);
+        target.subscribeBars(BarRequest.newBuilder().addSymbols("EURUSD").build(), o3);
+        verify(executor).scheduleAtFixedRate(any(), eq(1016L), eq(1000L), eq(MILLISECONDS)); // Shared per interval, after grace
+        verify(o3).onError(any());
+        target.adjustSubscriptions(); // Already scheduled
+        verify(executor).schedule(any(Runnable.class), eq(100L), eq(MILLISECONDS));
+
+        // Completed by tick
+        target.onTick(Instrument.EURUSD, 1100, 1.2, 1.0, 1.1, 2.0);
+        target.onTick(Instrument.EURUSD, 1200, 1.4, 1.0, 1.3, 2.0);
+        target.onTick(Instrument.EURUSD, 1300, 1.1, 1.0, 1.0, 2.0);
+        target.onTick(Instrument.EURUSD, 1999, 1.3, 1.0, 1.2, 2.0);
+        verify(o1, never()).onNext(any());
+        target.onTick(Instrument.EURUSD, 2000, 1.5, 1.0, 1.4, 2.0);
+        BarResponse bar = BarResponse.newBuilder().setSymbol("EURUSD").setIntervalMillis(1000).setTime(1000).setCount(4)
+                .setAskOpen(1.2).setAskHigh(1.4).setAskLow(1.1).setAskClose(1.3).setAskVolume(4.0)
+                .setBidOpen(1.1).setBidHigh(1.3).setBidLow(1.0).setBidClose(1.2).setBidVolume(8.0).build();
+        verify(o1).onNext(bar);
+        verify(o2).onNext(bar);
+
+        // Completed by timer, including the tick arriving after the bar within the grace period.
+        when(clock.millis()).thenReturn(3100L);
+        captor.getValue().run();
+        verify(o1, times(1)).onNext(any());
+        target.onTick(Instrument.EURUSD, 2999, 1.6, 1.0, 1.4, 2.0);
+        when(clock.millis()).thenReturn(3250L);
+        captor.getValue().run();
+        verify(o1).onNext(argThat(b -> b.getTime() == 2000 && b.getCount() == 2 && b.getAskOpen() == 1.5 && b.getAskClose() == 1.6));
+
+        // Late beyond the grace period
+        double late = Optional.ofNullable(CollectorRegistry.defaultRegistry.getSampleValue(
+                "dukas_grpc_ticks_late_total", new String[]{"symbol", "interval"}, new String[]{"EURUSD", "1000"})).orElse(0.0);
+        target.onTick(Instrument.EURUSD, 2600, 1.5, 1.0, 1.4, 2.0);
+        captor.getValue().run();
+        verify(o1, times(2)).onNext(any());
+        assertEquals(late + 1, CollectorRegistry.defaultRegistry.getSampleValue(
+                "dukas_grpc_ticks_late_total", new String[]{"symbol", "interval"}, new String[]{"EURUSD", "1000"}));
+
+        target.onShutdown();
+        verify(o1).onCompleted();
+        verify(future).cancel(false);
+
+    }
+
+    @Test
+    void testOnTick_Allocation() {
+
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        long id = Thread.currentThread().getId();
+        int count = 100_000;
+        long[] received = new long[1];
+
+        for (int subscribers = 0; subscribers <= 2; subscribers++) {
+
+            if (subscribers > 0) {
+                target.subscribe(request("EURUSD"), new StreamObserver<>() {
+                    @Override
+                    public void onNext(TickResponse value) {
+                        received[0] += value.getTime();
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                    }
+                });
+            }
+
+            for (int i = 0; i < count; i++) {
+                target.onTick(Instrument.EURUSD, i, 1.2, 3.4, 1.1, 5.6); // Warm up
+            }
+
+            long before = threads.getThreadAllocatedBytes(id);
+
+            for (int i = 0; i < count; i++) {
+                target.onTick(Instrument.EURUSD, i, 1.2, 3.4, 1.1, 5.6);
+            }
+
+            double perTick = (double) (threads.getThreadAllocatedBytes(id) - before) / count;
+
+            // Nothing without the subscribers, and only the shared message (72 bytes) otherwise.
+            assertTrue(perTick < (subscribers == 0 ? 1 : 128), "Allocated " + perTick + " bytes/tick with " + subscribers);
+
+        }
+
+        assertTrue(received[0] > 0);
+
+    }
+
+    @Test
+    void testSubscribe_Invalid() {
+
+        StreamObserver<TickResponse> o1 = observer();
+        StreamObserver<TickResponse> o2 = observer();
+
+        target.subscribe(request(), o1);
+        verify(o1).onCompleted();
+
+        target.subscribe(request("EURUSD", "FOOBAR"), o2);
+        verify(o2).onError(any());
+
+        assertEquals(List.of(), subscribers(Instrument.EURUSD));
+        verify(context, never()).setSubscribedInstruments(any());
+
+    }
+
+}
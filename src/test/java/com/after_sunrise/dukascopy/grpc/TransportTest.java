@@ -0,0 +1,98 @@
+package com.after_sunrise.dukascopy.grpc;
+
+import io.grpc.Server;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static com.after_sunrise.dukascopy.grpc.Config.CK_TRANSPORT_NATIVE;
+import static com.after_sunrise.dukascopy.grpc.Config.CK_TRANSPORT_REUSE_PORT;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * @author takanori.takase
+ * @version 0.0.0
+ */
+public class TransportTest {
+
+    @Test
+    void testNewServerBuilder() throws Exception {
+
+        for (String nativeTcp : new String[]{"false", "true"}) {
+
+            Properties properties = new Properties();
+            properties.setProperty(CK_TRANSPORT_NATIVE, nativeTcp);
+
+            Transport.Type type = Boolean.parseBoolean(nativeTcp) && Epoll.isAvailable() ? Transport.Type.EPOLL : Transport.Type.NIO;
+
+            try (Transport target = new Transport(properties)) {
+
+                EventLoopGroup boss = target.getGroup(type, true);
+                EventLoopGroup worker = target.getGroup(type, false);
+                assertNotSame(boss, worker);
+
+                for (int i = 0; i < 2; i++) { // Restart
+
+                    Server server = target.newServerBuilder("127.0.0.1:0").build().start();
+                    assertTrue(server.getPort() > 0);
+                    server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+
+                    assertSame(boss, target.getGroup(type, true));
+                    assertSame(worker, target.getGroup(type, false));
+                    assertTrue(!boss.isShuttingDown());
+
+                }
+
+                target.close();
+                assertTrue(boss.isShuttingDown());
+                assertTrue(worker.isShuttingDown());
+
+            }
+
+        }
+
+    }
+
+    @Test
+    void testReusePort() throws Exception {
+
+        assumeTrue(Epoll.isAvailable());
+
+        for (String reuse : new String[]{"false", "true"}) {
+
+            Properties properties = new Properties();
+            properties.setProperty(CK_TRANSPORT_REUSE_PORT, reuse);
+
+            try (Transport target = new Transport(properties)) {
+
+                Server s1 = target.newServerBuilder("127.0.0.1:0").build().start();
+
+                try {
+
+                    Server s2 = target.newServerBuilder("127.0.0.1:" + s1.getPort()).build();
+
+                    if (Boolean.parseBoolean(reuse)) {
+                        s2.start().shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+                    } else {
+                        assertThrows(IOException.class, s2::start); // Already bound.
+                    }
+
+                } finally {
+                    s1.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+                }
+
+            }
+
+        }
+
+    }
+
+}